@@ -0,0 +1,9 @@
+#!/bin/sh
+# Compiles src/ and the benchmarks against the bundled jars, then runs them.
+# Usage (from anywhere): bench/run.sh [filter regex] [sizes] [--sequential]
+# BENCH_HEAP sets the maximum heap (default 8g).
+cd "$(dirname "$0")/.." || exit 1
+CP="JTransforms-3.1-with-dependencies.jar:commons-math3-3.6.1.jar"
+rm -rf bench/out && mkdir -p bench/out
+javac -encoding UTF-8 -d bench/out -cp "$CP" $(find src bench/src -name '*.java') || exit 1
+exec java -Xmx"${BENCH_HEAP:-8g}" -cp "bench/out:$CP" bench.Benchmarks "$@"
@@ -0,0 +1,233 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import filereader.Image;
+import processors.DCTStego;
+import processors.FourierStego;
+import processors.LSBStego;
+import processors.PCAStego;
+import util.Parallel;
+
+/**
+ * Benchmarks for the image pipeline and each processor, run on synthetic
+ * images so results are reproducible without any files on disk.
+ * <p>
+ * Every benchmark runs once per size, both on a power-of-two square and on
+ * the largest prime-sided square below it (the slow case for the FFT).
+ * Usage, from the repository root:
+ * <pre>
+ * bench/run.sh [filter regex] [sizes] [--sequential]
+ * bench/run.sh "fourier.*" 256,1024,4096,8192
+ * </pre>
+ * Sizes default to {@code 256,1024}; 4096 and 8192 need a large heap
+ * ({@code BENCH_HEAP}, default 8g). {@code --sequential} disables the
+ * parallel row bands for comparison. Benchmarks that move a byte payload
+ * also report MB/s of payload.
+ */
+public class Benchmarks {
+  /** sizes run when none are given */
+  private static final String DEFAULT_SIZES = "256,1024";
+  /** bits per channel for the byte payload benchmarks */
+  private static final int PAYLOAD_BITS = 4;
+
+  /** A benchmark body for one input size. */
+  private interface Setup extends Function<Inputs, Supplier<?>> {
+  }
+
+  /** Synthetic inputs for one size, built once and shared by benchmarks. */
+  private static class Inputs {
+    /** image side length */
+    final int side;
+    /** source image as read from disk */
+    final BufferedImage buffered;
+    /** source image */
+    final Image source;
+    /** image to encode into the source */
+    final Image payload;
+    /** random bytes filling the source's capacity at {@code PAYLOAD_BITS} */
+    final byte[] bytes;
+    /** lazily encoded results, for the decode benchmarks */
+    private final Map<String, Image> encoded = new LinkedHashMap<>();
+
+    Inputs(int side) {
+      this.side = side;
+      this.buffered = synthetic(side, 1);
+      this.source = new Image(buffered);
+      this.payload = new Image(synthetic(side, 2));
+      this.bytes = new byte[(int) LSBStego.payloadCapacity(side, side, PAYLOAD_BITS)];
+      new Random(3).nextBytes(bytes);
+    }
+
+    /** Encodes with {@code processor} once and caches the result. */
+    Image encoded(String processor, Supplier<Image> encode) {
+      return encoded.computeIfAbsent(processor, k -> encode.get());
+    }
+  }
+
+  /**
+   * Runs the benchmarks.
+   * @param args Optional filter regex, comma-separated sizes and
+   * {@code --sequential}.
+   */
+  public static void main(String[] args) {
+    Pattern filter = Pattern.compile(".*");
+    String sizes = DEFAULT_SIZES;
+    for (String arg : args) {
+      if (arg.equals("--sequential")) {
+        Parallel.setSequential(true);
+      } else if (arg.matches("[0-9,]+")) {
+        sizes = arg;
+      } else {
+        filter = Pattern.compile(arg);
+      }
+    }
+
+    Map<String, Setup> benchmarks = new LinkedHashMap<>();
+    benchmarks.put("image.fromBufferedImage", in -> () -> new Image(in.buffered));
+    benchmarks.put("image.toBufferedImage", in -> () -> Image.toBufferedImage(in.source));
+    benchmarks.put("image.lab", in -> () -> new Image(in.buffered).getLabL());
+    benchmarks.put("image.scaleHalf", in -> () -> Image.scale(in.source, in.side / 2, in.side / 2));
+    benchmarks.put("lsb.encode", in -> () -> LSBStego.instance().encode(in.source, in.payload));
+    benchmarks.put("lsb.decode", in -> {
+      Image encoded = in.encoded("lsb", () -> LSBStego.instance().encode(in.source, in.payload));
+      return () -> LSBStego.instance().decode(encoded);
+    });
+    benchmarks.put("lsbBytes.encode", in -> () -> encodeBytes(in));
+    benchmarks.put("lsbBytes.decode", in -> {
+      Image encoded = in.encoded("lsbBytes", () -> encodeBytes(in));
+      return () -> decodeBytes(encoded);
+    });
+    benchmarks.put("fourier.encode", in -> () -> FourierStego.instance().encode(in.source, in.payload));
+    benchmarks.put("fourier.decode", in -> {
+      Image encoded = in.encoded("fourier", () -> FourierStego.instance().encode(in.source, in.payload));
+      return () -> FourierStego.instance().decode(encoded);
+    });
+    benchmarks.put("fourierFloat.encode", in -> () -> inFloat(() -> FourierStego.instance().encode(in.source, in.payload)));
+    benchmarks.put("fourierFloat.decode", in -> {
+      Image encoded = in.encoded("fourierFloat", () -> inFloat(() -> FourierStego.instance().encode(in.source, in.payload)));
+      return () -> inFloat(() -> FourierStego.instance().decode(encoded));
+    });
+    benchmarks.put("dct.encode", in -> () -> DCTStego.instance().encode(in.source, in.payload));
+    benchmarks.put("dct.decode", in -> {
+      Image encoded = in.encoded("dct", () -> DCTStego.instance().encode(in.source, in.payload));
+      return () -> DCTStego.instance().decode(encoded);
+    });
+    benchmarks.put("pca.encode", in -> () -> PCAStego.instance().encode(in.source, in.payload));
+    benchmarks.put("pca.decode", in -> {
+      Image encoded = in.encoded("pca", () -> PCAStego.instance().encode(in.source, in.payload));
+      return () -> PCAStego.instance().decode(encoded);
+    });
+    // payload bytes moved per operation, for the MB/s column
+    Map<String, ToLongFunction<Inputs>> payloadBytes = new HashMap<>();
+    payloadBytes.put("lsbBytes.encode", in -> in.bytes.length);
+    payloadBytes.put("lsbBytes.decode", in -> in.bytes.length);
+
+    List<Integer> sides = new ArrayList<>();
+    for (String size : sizes.split(",")) {
+      int side = Integer.parseInt(size);
+      sides.add(side);
+      sides.add(primeBelow(side));
+    }
+
+    Harness harness = new Harness(2, 5, 500);
+    System.out.printf("%-26s %6s %5s %12s %10s %10s %10s%n", "benchmark", "side", "shape", "ms/op", "+-",
+        "MP/s", "MB/s");
+    for (int side : sides) {
+      Inputs inputs = new Inputs(side);
+      for (Map.Entry<String, Setup> benchmark : benchmarks.entrySet()) {
+        if (!filter.matcher(benchmark.getKey()).matches()) {
+          continue;
+        }
+        Harness.Result result = harness.measure(benchmark.getValue().apply(inputs));
+        ToLongFunction<Inputs> bytes = payloadBytes.get(benchmark.getKey());
+        System.out.printf("%-26s %6d %5s %12.3f %10.3f %10.2f %10s%n", benchmark.getKey(), side,
+            Integer.bitCount(side) == 1 ? "pow2" : "prime", result.meanNanos / 1e6,
+            result.stdevNanos / 1e6, (double) side * side / result.meanNanos * 1e3,
+            (bytes == null) ? "-" : String.format("%.2f", bytes.applyAsLong(inputs) / result.meanNanos * 1e3));
+      }
+    }
+  }
+
+  /** Hides {@code in.bytes} in the source. */
+  private static Image encodeBytes(Inputs in) {
+    try {
+      return LSBStego.instance().encodeBytes(in.source, new ByteArrayInputStream(in.bytes), PAYLOAD_BITS);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Extracts a byte payload, discarding it. */
+  private static long decodeBytes(Image encoded) {
+    try {
+      return LSBStego.instance().decodeBytes(encoded, OutputStream.nullOutputStream());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Runs {@code body} with FourierStego in single precision. */
+  private static Image inFloat(Supplier<Image> body) {
+    FourierStego.setPrecision(FourierStego.Precision.FLOAT);
+    try {
+      return body.get();
+    } finally {
+      FourierStego.setPrecision(FourierStego.Precision.DOUBLE);
+    }
+  }
+
+  /**
+   * Makes a deterministic test image: smooth gradients with some noise,
+   * so neither the flat nor the random case is favoured.
+   * @param side Side length.
+   * @param seed Random seed.
+   * @return Image of type {@code TYPE_INT_RGB}.
+   */
+  private static BufferedImage synthetic(int side, long seed) {
+    Random random = new Random(seed);
+    BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+    double phase = random.nextDouble() * Math.PI;
+    for (int y = 0; y < side; y++) {
+      for (int x = 0; x < side; x++) {
+        int r = (int) (127 + 100 * Math.sin(phase + 6.0 * x / side)) + random.nextInt(16);
+        int g = (int) (255.0 * y / side) - random.nextInt(16);
+        int b = (int) (127 + 100 * Math.cos(phase + 9.0 * (x + y) / side)) + random.nextInt(16);
+        image.setRGB(x, y, Image.pack(clamp(r), clamp(g), clamp(b)));
+      }
+    }
+    return image;
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+
+  /** Largest prime below {@code n}, at least 2. */
+  private static int primeBelow(int n) {
+    for (int p = n - 1; p > 2; p--) {
+      boolean prime = p % 2 != 0;
+      for (int d = 3; prime && d * d <= p; d += 2) {
+        prime = p % d != 0;
+      }
+      if (prime) {
+        return p;
+      }
+    }
+    return 2;
+  }
+}
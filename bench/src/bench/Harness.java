@@ -0,0 +1,85 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Minimal JMH-style measurement loop: warmup iterations, then measured
+ * iterations that each repeat the benchmark body for at least a minimum
+ * time, reporting the mean and standard deviation of time per operation.
+ */
+public class Harness {
+  /** warmup iterations, not reported */
+  private final int warmups;
+  /** measured iterations */
+  private final int iterations;
+  /** minimum time per iteration; the body is repeated until it is reached */
+  private final long minIterationNanos;
+  /** results of each benchmark body, folded in so the JIT cannot drop them */
+  private static volatile int sink;
+
+  /**
+   * Constructs a new {@code Harness}.
+   * @param warmups Warmup iterations.
+   * @param iterations Measured iterations.
+   * @param minIterationMillis Minimum time per iteration.
+   */
+  public Harness(int warmups, int iterations, long minIterationMillis) {
+    this.warmups = warmups;
+    this.iterations = iterations;
+    this.minIterationNanos = minIterationMillis * 1_000_000L;
+  }
+
+  /** Timing of one benchmark. */
+  public static class Result {
+    /** mean nanoseconds per operation */
+    public final double meanNanos;
+    /** standard deviation of nanoseconds per operation across iterations */
+    public final double stdevNanos;
+    /** total operations measured */
+    public final long operations;
+
+    private Result(double meanNanos, double stdevNanos, long operations) {
+      this.meanNanos = meanNanos;
+      this.stdevNanos = stdevNanos;
+      this.operations = operations;
+    }
+  }
+
+  /**
+   * Measures {@code body}.
+   * @param body Operation to time. Its result is consumed so it is not
+   * optimised away.
+   * @return Timing.
+   */
+  public Result measure(Supplier<?> body) {
+    for (int i = 0; i < warmups; i++) {
+      iteration(body);
+    }
+    List<Double> perOp = new ArrayList<>();
+    long operations = 0;
+    for (int i = 0; i < iterations; i++) {
+      long[] timing = iteration(body);
+      perOp.add((double) timing[0] / timing[1]);
+      operations += timing[1];
+    }
+    double mean = perOp.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+    double variance = perOp.stream().mapToDouble(t -> (t - mean) * (t - mean)).sum()
+        / Math.max(1, perOp.size() - 1);
+    return new Result(mean, Math.sqrt(variance), operations);
+  }
+
+  /** Runs body until the minimum time passes; returns {nanos, operations}. */
+  private long[] iteration(Supplier<?> body) {
+    long start = System.nanoTime();
+    long elapsed;
+    long operations = 0;
+    do {
+      sink += System.identityHashCode(body.get());
+      operations++;
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < minIterationNanos);
+    return new long[] { elapsed, operations };
+  }
+}
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Compiles src/ and the correctness checks against the bundled jars, then runs
+# them. Exits non-zero if any check fails.
+# Usage (from anywhere): check/run.sh [filter regex]
+# CHECK_HEAP sets the maximum heap (default 4g).
+cd "$(dirname "$0")/.." || exit 1
+CP="JTransforms-3.1-with-dependencies.jar:commons-math3-3.6.1.jar"
+rm -rf check/out && mkdir -p check/out
+javac -encoding UTF-8 -d check/out -cp "$CP" $(find src check/src -name '*.java') || exit 1
+exec java -Xmx"${CHECK_HEAP:-4g}" -cp "check/out:$CP" check.Checks "$@"
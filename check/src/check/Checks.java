@@ -0,0 +1,80 @@
+package check;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import filereader.ImageTransformCheck;
+import filereader.LabConverterCheck;
+import filereader.RawImageFileCheck;
+import filereader.StripReaderCheck;
+import processors.FourierSizeCheck;
+import processors.LSBBytesCheck;
+
+/**
+ * Correctness checks that compare optimized code paths against reference
+ * implementations and round-trip invariants, on synthetic inputs so they
+ * need no files on disk. Checks live in the package of the code they check
+ * when they need package-private access.
+ * <p>
+ * Usage, from the repository root:
+ * <pre>
+ * check/run.sh [filter regex]
+ * </pre>
+ * Prints one line per check and exits with status 1 if any failed.
+ */
+public class Checks {
+  /** A single check, failing by throwing. */
+  public interface Check {
+    void run() throws Exception;
+  }
+
+  /**
+   * Runs the checks.
+   * @param args Optional filter regex on check names.
+   */
+  public static void main(String[] args) {
+    Pattern filter = Pattern.compile(args.length > 0 ? args[0] : ".*");
+    Map<String, Check> checks = new LinkedHashMap<>();
+    checks.put("lab.tables", LabConverterCheck::tables);
+    checks.put("lab.conversion", LabConverterCheck::conversion);
+    checks.put("image.pca.rows", ImageTransformCheck::rows);
+    checks.put("fourier.size", FourierSizeCheck::sizes);
+    checks.put("lsb.bytes.roundtrip", LSBBytesCheck::roundTrip);
+    checks.put("lsb.bytes.ranges", LSBBytesCheck::ranges);
+    checks.put("lsb.bytes.update", LSBBytesCheck::update);
+    checks.put("raw.header", RawImageFileCheck::header);
+    checks.put("stream.strips", StripReaderCheck::strips);
+    checks.put("stream.stego", StripReaderCheck::stego);
+
+    int failed = 0;
+    for (Map.Entry<String, Check> check : checks.entrySet()) {
+      if (!filter.matcher(check.getKey()).matches()) {
+        continue;
+      }
+      long start = System.nanoTime();
+      try {
+        check.getValue().run();
+        System.out.printf("ok    %-28s %8.0f ms%n", check.getKey(), (System.nanoTime() - start) / 1e6);
+      } catch (Throwable e) {
+        failed++;
+        System.out.printf("FAIL  %-28s %s%n", check.getKey(), e);
+      }
+    }
+    if (failed > 0) {
+      System.out.println(failed + " check(s) failed");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Fails the running check unless {@code condition} holds.
+   * @param condition Condition to require.
+   * @param message Failure description.
+   */
+  public static void require(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+}
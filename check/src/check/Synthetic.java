@@ -0,0 +1,49 @@
+package check;
+
+import java.util.Random;
+
+import filereader.Image;
+
+/** Deterministic test images for the checks. */
+public class Synthetic {
+  /**
+   * Makes smooth gradients with some noise, so neither the flat nor the
+   * random case is favoured.
+   * @param width Image width.
+   * @param height Image height.
+   * @param seed Random seed.
+   * @return New image.
+   */
+  public static Image image(int width, int height, long seed) {
+    Random random = new Random(seed);
+    double phase = random.nextDouble() * Math.PI;
+    int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int r = (int) (127 + 100 * Math.sin(phase + 6.0 * x / width)) + random.nextInt(16);
+        int g = (int) (255.0 * y / height) - random.nextInt(16);
+        int b = (int) (127 + 100 * Math.cos(phase + 9.0 * (x + y) / width)) + random.nextInt(16);
+        pixels[y * width + x] = Image.pack(clamp(r), clamp(g), clamp(b));
+      }
+    }
+    return new Image(width, height, pixels);
+  }
+
+  /**
+   * Makes uniformly random pixels.
+   * @param length Number of pixels.
+   * @param random Source of randomness.
+   * @return Packed {@code 0xRRGGBB} pixels.
+   */
+  public static int[] pixels(int length, Random random) {
+    int[] pixels = new int[length];
+    for (int i = 0; i < length; i++) {
+      pixels[i] = random.nextInt() & 0xFFFFFF;
+    }
+    return pixels;
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
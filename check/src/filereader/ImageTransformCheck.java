@@ -0,0 +1,47 @@
+package filereader;
+
+import static check.Checks.require;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import check.Synthetic;
+
+/**
+ * Checks that {@link Image}'s PCA helpers keep their per-pixel row layout
+ * and agree with the component planes of their fused forms.
+ */
+public class ImageTransformCheck {
+  /** largest allowed difference in a component */
+  private static final double TOLERANCE = 1e-9;
+
+  /**
+   * Rows match the centred pixels times the basis, computed as the original
+   * code did, and reconstruct the same image as the planes.
+   */
+  public static void rows() {
+    Image image = Synthetic.image(97, 61, 8);
+    RealMatrix basis = Image.getTransformationMatrix(image);
+    double[][] data = Image.getImageData(image);
+    double[] means = Image.getMeans(data);
+    double[][] expected = new Array2DRowRealMatrix(Image.centerData(data, means)).multiply(basis).getData();
+
+    double[][] rows = Image.applyTransformationMatrix(image);
+    double[][] planes = Image.applyTransformationPlanes(image);
+    require(rows.length == image.width * image.height, rows.length + " rows for " + image.width * image.height + " pixels");
+    for (int i = 0; i < rows.length; i++) {
+      require(rows[i].length == 3, "row " + i + " has " + rows[i].length + " components");
+      for (int k = 0; k < 3; k++) {
+        require(Math.abs(rows[i][k] - expected[i][k]) <= TOLERANCE, "row " + i + " component " + k);
+        require(rows[i][k] == planes[k][i], "row " + i + " differs from plane " + k);
+      }
+    }
+
+    int[] fromRows = Image.imageFromTransform(rows, basis, means, image.width, image.height).getPixels();
+    int[] fromPlanes = Image.imageFromTransformPlanes(planes, basis, means, image.width, image.height).getPixels();
+    require(Arrays.equals(fromRows, fromPlanes), "rows and planes reconstruct different images");
+    require(Arrays.equals(fromRows, image.getPixels()), "all components do not reconstruct the image");
+  }
+}
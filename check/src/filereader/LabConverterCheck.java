@@ -0,0 +1,62 @@
+package filereader;
+
+import static check.Checks.require;
+
+/**
+ * Checks {@link LabConverter}'s tables and batch conversion against the
+ * original per-pixel formulas it keeps as references.
+ */
+public class LabConverterCheck {
+  /** largest allowed difference in L, a or b from the reference */
+  private static final double LAB_TOLERANCE = 1e-11;
+
+  /**
+   * Every linearisation entry equals the reference expression, and every
+   * gamma threshold is exactly where the reference's rounded output steps.
+   */
+  public static void tables() {
+    for (int i = 0; i < 256; i++) {
+      require(LabConverter.linear(i) == LabConverter.linearReference(i), "LINEAR[" + i + "]");
+    }
+    for (int k = 0; k < 255; k++) {
+      double threshold = LabConverter.threshold(k);
+      double below = Math.nextDown(threshold);
+      require(LabConverter.encodeReference(threshold) > k, "THRESHOLDS[" + k + "] encodes to " + k + " or less");
+      require(LabConverter.encodeReference(below) <= k, "THRESHOLDS[" + k + "] is not the first value above " + k);
+      require(LabConverter.encode(threshold) == LabConverter.encodeReference(threshold), "encode at THRESHOLDS[" + k + "]");
+      require(LabConverter.encode(below) == LabConverter.encodeReference(below), "encode below THRESHOLDS[" + k + "]");
+    }
+    double[] edges = { Double.NaN, Double.NEGATIVE_INFINITY, -1, -0.0, 0, 1, 1.5, Double.POSITIVE_INFINITY };
+    for (double edge : edges) {
+      require(LabConverter.encode(edge) == LabConverter.encodeReference(edge), "encode(" + edge + ")");
+    }
+  }
+
+  /**
+   * Every 8-bit colour converts to Lab within {@code LAB_TOLERANCE} of the
+   * reference, and that Lab converts back to exactly the reference's RGB.
+   */
+  public static void conversion() {
+    int[] rgb = new int[1 << 16];
+    double[] labL = new double[rgb.length];
+    double[] labA = new double[rgb.length];
+    double[] labB = new double[rgb.length];
+    int[] back = new int[rgb.length];
+    double worst = 0;
+    for (int red = 0; red < 256; red++) {
+      for (int i = 0; i < rgb.length; i++) {
+        rgb[i] = red << 16 | i;
+      }
+      LabConverter.rgbToLab(rgb, 0, rgb.length, labL, labA, labB);
+      LabConverter.labToRgb(labL, labA, labB, 0, rgb.length, back);
+      for (int i = 0; i < rgb.length; i++) {
+        double[] lab = LabConverter.rgbToLabReference(red, i >> 8, i & 0xFF);
+        worst = Math.max(worst, Math.max(Math.abs(labL[i] - lab[0]),
+            Math.max(Math.abs(labA[i] - lab[1]), Math.abs(labB[i] - lab[2]))));
+        require(back[i] == LabConverter.labToRgbReference(labL[i], labA[i], labB[i]),
+            String.format("Lab -> RGB differs for 0x%06X", rgb[i]));
+      }
+    }
+    require(worst < LAB_TOLERANCE, "RGB -> Lab differs by " + worst);
+  }
+}
@@ -0,0 +1,87 @@
+package filereader;
+
+import static check.Checks.require;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import check.Synthetic;
+
+/**
+ * Checks that {@link RawImageFile} reads back what it wrote and rejects
+ * truncated or corrupt headers with an {@link IOException} naming the file,
+ * before mapping anything.
+ */
+public class RawImageFileCheck {
+  /** byte offsets of the header fields (see RawImageFile) */
+  private static final int HEADER_LENGTH = 12;
+  private static final int WIDTH = 16;
+  private static final int PARAMETERS_LENGTH = 28;
+
+  /** A written file reads back, and every corruption is reported as such. */
+  public static void header() throws Exception {
+    Image image = Synthetic.image(37, 23, 15);
+    Map<String, String> parameters = new LinkedHashMap<>();
+    parameters.put("processor", "check");
+    File file = Files.createTempFile("raw-header", RawImageFile.EXTENSION).toFile();
+    try {
+      RawImageFile.write(image, parameters, file);
+      require(Arrays.equals(RawImageFile.read(file).getPixels(), image.getPixels()), "pixels differ");
+      require(RawImageFile.readParameters(file).equals(parameters), "parameters differ");
+      byte[] valid = Files.readAllBytes(file.toPath());
+
+      requireRejected(file, Arrays.copyOf(valid, 20), "shorter than the fixed header");
+      requireRejected(file, Arrays.copyOf(valid, valid.length - 4), "missing its last pixel");
+      requireRejected(file, withInt(valid, HEADER_LENGTH, 16), "header length below the fixed header");
+      requireRejected(file, withInt(valid, HEADER_LENGTH, 33), "header length not a multiple of 8");
+      requireRejected(file, withInt(valid, HEADER_LENGTH, 1 << 30), "header length past the end");
+      requireRejected(file, withInt(valid, PARAMETERS_LENGTH, -1), "negative parameter length");
+      requireRejected(file, withInt(valid, PARAMETERS_LENGTH, 1 << 30), "parameters past the header");
+      requireRejected(file, withInt(valid, WIDTH, 0), "zero width");
+      requireRejected(file, withInt(valid, WIDTH, 1 << 20), "more pixels than the file holds");
+    } finally {
+      file.delete();
+    }
+  }
+
+  /** Copy of bytes with the big-endian int at offset replaced. */
+  private static byte[] withInt(byte[] bytes, int offset, int value) {
+    byte[] copy = bytes.clone();
+    for (int i = 0; i < 4; i++) {
+      copy[offset + i] = (byte) (value >>> (24 - 8 * i));
+    }
+    return copy;
+  }
+
+  /** Writes bytes to file and requires every reader to reject them. */
+  private static void requireRejected(File file, byte[] bytes, String name) throws IOException {
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      out.write(bytes);
+    }
+    requireIOException(() -> RawImageFile.read(file), file, name + ": read");
+    requireIOException(() -> RawImageFile.readParameters(file), file, name + ": readParameters");
+    requireIOException(() -> RawImageFile.edit(file).close(), file, name + ": edit");
+  }
+
+  private interface Read {
+    void run() throws IOException;
+  }
+
+  private static void requireIOException(Read read, File file, String name) {
+    try {
+      read.run();
+    } catch (IOException e) {
+      require(e.getMessage().endsWith(file.toString()), name + ": message does not name the file: " + e);
+      return;
+    } catch (RuntimeException e) {
+      throw new AssertionError(name + ": " + e, e);
+    }
+    throw new AssertionError(name + ": accepted");
+  }
+}
@@ -0,0 +1,144 @@
+package filereader;
+
+import static check.Checks.require;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import check.Synthetic;
+import processors.DCTStego;
+import processors.LSBStego;
+
+/**
+ * Checks that {@link StripReader} returns the rows a full ImageIO read does,
+ * on its single-pass PNG path and its ImageIO fallback, and that streamed
+ * encodes and decodes match their in-memory forms.
+ */
+public class StripReaderCheck {
+  /** strip size for the streaming checks, small enough for many strips */
+  private static final int STRIP_PIXELS = 5000;
+  /** strip size the processors start with */
+  private static final int DEFAULT_STRIP_PIXELS = 1 << 22;
+
+  /**
+   * Bands read in order, overlapping, skipping ahead and going back all
+   * match a full read, for every PNG layout the decoder handles and one it
+   * leaves to ImageIO.
+   */
+  public static void strips() throws Exception {
+    Random random = new Random(12);
+    Image image = Synthetic.image(157, 211, 12);
+    BufferedImage rgb = Image.toBufferedImage(image);
+    BufferedImage argb = new BufferedImage(rgb.getWidth(), rgb.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    BufferedImage gray = new BufferedImage(rgb.getWidth(), rgb.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+    for (int y = 0; y < rgb.getHeight(); y++) {
+      for (int x = 0; x < rgb.getWidth(); x++) {
+        argb.setRGB(x, y, (random.nextInt(256) << 24) | rgb.getRGB(x, y));
+        gray.setRGB(x, y, rgb.getRGB(x, y));
+      }
+    }
+    byte[] red = new byte[20];
+    byte[] green = new byte[20];
+    byte[] blue = new byte[20];
+    random.nextBytes(red);
+    random.nextBytes(green);
+    random.nextBytes(blue);
+    BufferedImage palette = new BufferedImage(rgb.getWidth(), rgb.getHeight(), BufferedImage.TYPE_BYTE_INDEXED,
+        new IndexColorModel(8, red.length, red, green, blue));
+    for (int y = 0; y < rgb.getHeight(); y++) {
+      for (int x = 0; x < rgb.getWidth(); x++) {
+        palette.getRaster().setSample(x, y, 0, random.nextInt(red.length));
+      }
+    }
+
+    strips("rgb", rgb, true, random);
+    strips("argb", argb, true, random);
+    strips("palette", palette, true, random);
+    strips("gray", gray, false, random);
+  }
+
+  private static void strips(String name, BufferedImage image, boolean singlePass, Random random) throws Exception {
+    File file = Files.createTempFile("strip-reader", ".png").toFile();
+    try {
+      require(ImageIO.write(image, "png", file), name + ": not written");
+      int[] full = new Image(ImageIO.read(file)).getPixels();
+      try (PNGRowDecoder decoder = PNGRowDecoder.open(file)) {
+        require((decoder != null) == singlePass, name + ": single pass " + (decoder != null));
+      }
+      for (int trial = 0; trial < 10; trial++) {
+        try (StripReader reader = StripReader.open(file)) {
+          int width = reader.getWidth();
+          int height = reader.getHeight();
+          for (int end = 0; end < height;) {
+            int start = end;
+            int mode = random.nextInt(4);
+            if (mode == 0 && end > 0) { // overlap the last band
+              start = Math.max(0, end - 1 - random.nextInt(5));
+            } else if (mode == 1) { // skip rows
+              start = Math.min(height - 1, end + random.nextInt(10));
+            } else if (mode == 2 && end > 0) { // go back
+              start = random.nextInt(end);
+            }
+            int rows = Math.min(1 + random.nextInt(40), height - start);
+            int[] band = reader.read(start, rows).getPixels();
+            require(Arrays.equals(band, Arrays.copyOfRange(full, start * width, (start + rows) * width)),
+                name + ": rows " + start + " to " + (start + rows) + " differ");
+            end = Math.max(end, start + rows);
+          }
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Streamed LSB and DCT encodes and decodes over many strips write the
+   * same pixels as the in-memory paths.
+   */
+  public static void stego() throws Exception {
+    File source = Files.createTempFile("strip-source", ".png").toFile();
+    File encode = Files.createTempFile("strip-encode", ".png").toFile();
+    File output = Files.createTempFile("strip-output", ".png").toFile();
+    File decoded = Files.createTempFile("strip-decoded", ".png").toFile();
+    LSBStego lsb = LSBStego.instance();
+    DCTStego dct = DCTStego.instance();
+    lsb.setStripPixels(STRIP_PIXELS);
+    dct.setStripPixels(STRIP_PIXELS);
+    try {
+      require(FileReader.writeImage(Synthetic.image(203, 141, 13), source), "source not written");
+      require(FileReader.writeImage(Synthetic.image(150, 70, 14), encode), "encode not written");
+      Image sourceImage = FileReader.readImage(source);
+      Image encodeImage = FileReader.readImage(encode);
+
+      require(lsb.encode(source, encode, output), "lsb: streamed encode failed");
+      Image encoded = FileReader.readImage(output);
+      require(Arrays.equals(encoded.getPixels(), lsb.encode(sourceImage, encodeImage).getPixels()),
+          "lsb: streamed encode differs");
+      require(lsb.decode(output, decoded), "lsb: streamed decode failed");
+      require(Arrays.equals(FileReader.readImage(decoded).getPixels(), lsb.decode(encoded).getPixels()),
+          "lsb: streamed decode differs");
+
+      require(dct.encode(source, encode, output), "dct: streamed encode failed");
+      encoded = FileReader.readImage(output);
+      require(Arrays.equals(encoded.getPixels(), dct.encode(sourceImage, encodeImage).getPixels()),
+          "dct: streamed encode differs");
+      require(dct.decode(output, decoded), "dct: streamed decode failed");
+      require(Arrays.equals(FileReader.readImage(decoded).getPixels(), dct.decode(encoded).getPixels()),
+          "dct: streamed decode differs");
+    } finally {
+      lsb.setStripPixels(DEFAULT_STRIP_PIXELS);
+      dct.setStripPixels(DEFAULT_STRIP_PIXELS);
+      source.delete();
+      encode.delete();
+      output.delete();
+      decoded.delete();
+    }
+  }
+}
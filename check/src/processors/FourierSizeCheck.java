@@ -0,0 +1,128 @@
+package processors;
+
+import static check.Checks.require;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import check.Synthetic;
+import filereader.Image;
+
+/**
+ * Checks that a payload hidden by {@link FourierStego} still decodes with
+ * every {@link FourierStego.TransformSize}, on prime-sized carriers where
+ * SMOOTH always transforms a smaller block than the image.
+ * <p>
+ * The error is the mean absolute per-channel difference, in 8-bit levels,
+ * between the decoded payload and the payload as embedded. Decoding the
+ * encoded image as is measures what embedding loses: decode transforms the
+ * same plane encode wrote, so both sizes stay near 0.5 levels. Decoding it
+ * after a save to PNG and a load, as a user does, adds the 8-bit rounding
+ * of the carrier: 1.5 to 4 levels, against about 67 for an unrelated
+ * payload.
+ * <p>
+ * The carrier is kept to midtones. Embedding stretches the Lab planes well
+ * past the RGB gamut of a saturated carrier, and the clipping on save then
+ * loses the payload in either size.
+ */
+public class FourierSizeCheck {
+  /** highest mean error decoding the encoded image as is, in levels */
+  static final double MAX_ERROR = 1;
+  /** highest mean error decoding the encoded image after a PNG round trip */
+  static final double MAX_SAVED_ERROR = 5;
+  /** highest ratio of the error to that against an unrelated payload */
+  static final double MAX_UNRELATED_RATIO = 0.5;
+
+  /** carrier sizes, width x height; both prime */
+  private static final int[][] SIZES = { { 509, 503 }, { 1021, 1019 } };
+
+  /** Decodes at every transform size within the bounds, before and after saving. */
+  public static void sizes() throws Exception {
+    FourierStego.TransformSize previous = FourierStego.getTransformSize();
+    File file = Files.createTempFile("fourier-size", ".png").toFile();
+    try {
+      for (int[] size : SIZES) {
+        int width = size[0];
+        int height = size[1];
+        Image carrier = midtones(Synthetic.image(width, height, 1));
+        Image payload = Synthetic.image(width, height, 2);
+        Image unrelated = flipped(payload);
+        for (FourierStego.TransformSize transformSize : FourierStego.TransformSize.values()) {
+          FourierStego.setTransformSize(transformSize);
+          Image encoded = FourierStego.instance().encode(carrier, payload);
+          require(encoded.width == width && encoded.height == height,
+              transformSize + ": encoded " + encoded.width + "x" + encoded.height);
+          String name = width + "x" + height + " " + transformSize;
+          requireDecodes(FourierStego.instance().decode(encoded), payload, unrelated, transformSize, MAX_ERROR,
+              name);
+
+          require(ImageIO.write(Image.toBufferedImage(encoded), "png", file), name + ": not written");
+          Image saved = new Image(ImageIO.read(file));
+          requireDecodes(FourierStego.instance().decode(saved), payload, unrelated, transformSize,
+              MAX_SAVED_ERROR, name + " saved");
+        }
+      }
+    } finally {
+      FourierStego.setTransformSize(previous);
+      file.delete();
+    }
+  }
+
+  /** Channels of image mapped into 64 to 191. */
+  private static Image midtones(Image image) {
+    int[] pixels = image.getPixels().clone();
+    for (int i = 0; i < pixels.length; i++) {
+      int pixel = pixels[i];
+      pixels[i] = Image.pack(64 + ((pixel >> 16) & 0xFF) / 2, 64 + ((pixel >> 8) & 0xFF) / 2, 64 + (pixel & 0xFF) / 2);
+    }
+    return new Image(image.width, image.height, pixels);
+  }
+
+  /**
+   * Image upside down: the same colours as image, but unrelated to it bin
+   * for bin. (A second Synthetic image shares its gradients too closely.)
+   */
+  private static Image flipped(Image image) {
+    int[] pixels = image.getPixels();
+    int[] flipped = new int[pixels.length];
+    for (int y = 0; y < image.height; y++) {
+      System.arraycopy(pixels, (image.height - 1 - y) * image.width, flipped, y * image.width, image.width);
+    }
+    return new Image(image.width, image.height, flipped);
+  }
+
+  private static void requireDecodes(Image decoded, Image payload, Image unrelated,
+      FourierStego.TransformSize transformSize, double bound, String name) {
+    double error = meanError(decoded, payload, transformSize);
+    double unrelatedError = meanError(decoded, unrelated, transformSize);
+    require(error <= bound, name + ": mean error " + error + " > " + bound);
+    require(error <= MAX_UNRELATED_RATIO * unrelatedError,
+        name + ": mean error " + error + " against " + unrelatedError + " for an unrelated payload");
+  }
+
+  /**
+   * Mean absolute per-channel difference between decoded and the bins of
+   * payload it was read from, for a payload the carrier's size.
+   */
+  private static double meanError(Image decoded, Image payload, FourierStego.TransformSize transformSize) {
+    boolean exact = transformSize == FourierStego.TransformSize.EXACT;
+    int w = exact ? payload.width : FourierStego.smoothSize(payload.width);
+    int h = exact ? payload.height : FourierStego.smoothSize(payload.height);
+    // decoded pixel (x, y) is band bin (w / crop + 2x, h / crop + 2y) of the
+    // payload scaled to half the transform size
+    Image scaled = Image.scale(payload, w / 2, h / 2);
+    long sum = 0;
+    for (int y = 0; y < decoded.height; y++) {
+      for (int x = 0; x < decoded.width; x++) {
+        int expected = scaled.getPixel(w / FourierStego.crop + 2 * x, h / FourierStego.crop + 2 * y);
+        int actual = decoded.getPixel(x, y);
+        for (int shift = 0; shift <= 16; shift += 8) {
+          sum += Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+        }
+      }
+    }
+    return (double) sum / (3L * decoded.width * decoded.height);
+  }
+}
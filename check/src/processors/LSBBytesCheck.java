@@ -0,0 +1,239 @@
+package processors;
+
+import static check.Checks.require;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import check.Checks.Check;
+import check.Synthetic;
+import filereader.FileReader;
+import filereader.Image;
+
+/**
+ * Checks {@link LSBStego}'s byte-payload mode on random carriers, sizes, bit
+ * depths and payloads.
+ */
+public class LSBBytesCheck {
+  /** random carriers per check */
+  private static final int TRIALS = 300;
+
+  /**
+   * Payloads round-trip exactly, up to full capacity, leaving the carrier's
+   * bits above them untouched; oversized payloads and carriers without a
+   * header are rejected, and a payload survives a PNG file.
+   */
+  public static void roundTrip() throws Exception {
+    Random random = new Random(5);
+    LSBStego lsb = LSBStego.instance();
+    for (int trial = 0; trial < TRIALS; trial++) {
+      int width = 6 + random.nextInt(60);
+      int height = 6 + random.nextInt(60);
+      int bits = 1 + random.nextInt(8);
+      int[] pixels = Synthetic.pixels(width * height, random);
+      Image source = new Image(width, height, pixels);
+      int capacity = (int) LSBStego.payloadCapacity(width, height, bits);
+      byte[] payload = new byte[(trial % 5 == 0) ? capacity : random.nextInt(capacity + 1)];
+      random.nextBytes(payload);
+      String name = "trial " + trial + " (" + width + "x" + height + ", " + bits + " bits)";
+
+      Image encoded = lsb.encodeBytes(source, new ByteArrayInputStream(payload), bits);
+      require(Arrays.equals(decode(encoded), payload), name + ": payload differs");
+      int[] result = encoded.getPixels();
+      int body = 0x010101 * ((0xFF << bits) & 0xFF);
+      for (int i = 0; i < pixels.length; i++) {
+        // the header holds one bit per channel
+        int keep = (i < LSBStego.HEADER_PIXELS) ? 0xFEFEFE : body;
+        require((result[i] & keep) == (pixels[i] & keep), name + ": pixel " + i + " changed above the payload");
+      }
+      require(rejects(() -> lsb.encodeBytes(source, new ByteArrayInputStream(new byte[capacity + 1]), bits)),
+          name + ": over-capacity payload accepted");
+    }
+    require(rejects(() -> decode(new Image(64, 64, new int[64 * 64]))), "carrier without a header accepted");
+
+    // a few MB through a PNG file
+    Image carrier = Synthetic.image(1024, 1024, 4);
+    byte[] payload = new byte[(int) LSBStego.payloadCapacity(1024, 1024, 6)];
+    random.nextBytes(payload);
+    File file = Files.createTempFile("lsb-bytes", ".png").toFile();
+    try {
+      require(FileReader.writeImage(lsb.encodeBytes(carrier, new ByteArrayInputStream(payload), 6), file),
+          "PNG write failed");
+      require(Arrays.equals(decode(FileReader.readImage(file)), payload), "payload differs after PNG");
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Random byte ranges match the same slices of the payload, also from a
+   * memory-mapped raw carrier; the header gives the length, and ranges past
+   * it are rejected.
+   */
+  public static void ranges() throws Exception {
+    Random random = new Random(7);
+    LSBStego lsb = LSBStego.instance();
+    for (int trial = 0; trial < TRIALS; trial++) {
+      int width = 6 + random.nextInt(80);
+      int height = 6 + random.nextInt(80);
+      int bits = 1 + random.nextInt(8);
+      int capacity = (int) LSBStego.payloadCapacity(width, height, bits);
+      byte[] payload = new byte[random.nextInt(capacity + 1)];
+      random.nextBytes(payload);
+      Image encoded = lsb.encodeBytes(new Image(width, height, Synthetic.pixels(width * height, random)),
+          new ByteArrayInputStream(payload), bits);
+      String name = "trial " + trial + " (" + width + "x" + height + ", " + bits + " bits)";
+      require(LSBStego.payloadLength(encoded) == payload.length, name + ": wrong length");
+      requireRanges(encoded, payload, random, name);
+      require(rejects(() -> decode(encoded, 0, payload.length + 1)), name + ": range past the end accepted");
+      require(rejects(() -> decode(encoded, 1, 0)), name + ": reversed range accepted");
+    }
+
+    Image carrier = Synthetic.image(1024, 1024, 5);
+    byte[] payload = new byte[(int) LSBStego.payloadCapacity(1024, 1024, 4)];
+    random.nextBytes(payload);
+    File file = Files.createTempFile("lsb-ranges", ".sraw").toFile();
+    try {
+      require(FileReader.writeImage(lsb.encodeBytes(carrier, new ByteArrayInputStream(payload), 4), file),
+          "raw write failed");
+      requireRanges(FileReader.readImage(file), payload, random, "mapped carrier");
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Updated carriers decode to the new payload, whether it flips one bit,
+   * shares a prefix, grows or shrinks; high bits stay untouched, stale
+   * payload bits are cleared and oversized payloads are rejected. Raw files
+   * are edited in place a tile at a time, PNG files rewritten.
+   */
+  public static void update() throws Exception {
+    Random random = new Random(9);
+    LSBStego lsb = LSBStego.instance();
+    for (int trial = 0; trial < TRIALS; trial++) {
+      int width = 10 + random.nextInt(200);
+      int height = 10 + random.nextInt(200);
+      int bits = 1 + random.nextInt(8);
+      int[] pixels = Synthetic.pixels(width * height, random);
+      int capacity = (int) LSBStego.payloadCapacity(width, height, bits);
+      byte[] before = new byte[random.nextInt(capacity + 1)];
+      random.nextBytes(before);
+      boolean flip = before.length > 0 && random.nextInt(3) == 0;
+      byte[] after;
+      if (flip) {
+        after = before.clone();
+        after[random.nextInt(after.length)] ^= 1;
+      } else {
+        after = new byte[random.nextInt(capacity + 1)];
+        random.nextBytes(after);
+        if (random.nextBoolean()) {
+          System.arraycopy(before, 0, after, 0, Math.min(before.length, after.length));
+        }
+      }
+      String name = "trial " + trial + " (" + width + "x" + height + ", " + bits + " bits)";
+
+      Image encoded = lsb.encodeBytes(new Image(width, height, pixels), new ByteArrayInputStream(before), bits);
+      Image updated = lsb.updateBytes(encoded, new ByteArrayInputStream(after));
+      require(Arrays.equals(decode(updated), after), name + ": payload differs after update");
+      int[] result = updated.getPixels();
+      int keep = 0x010101 * ((0xFF << bits) & 0xFF);
+      for (int i = LSBStego.HEADER_PIXELS; i < result.length; i++) {
+        require((result[i] & keep) == (pixels[i] & keep), name + ": pixel " + i + " changed above the payload");
+      }
+      if (flip) {
+        int[] original = encoded.getPixels();
+        int changed = 0;
+        for (int i = 0; i < result.length; i++) {
+          changed += (result[i] != original[i]) ? 1 : 0;
+        }
+        require(changed == 1, name + ": one flipped bit changed " + changed + " pixels");
+      }
+      require(rejects(() -> lsb.updateBytes(encoded, new ByteArrayInputStream(new byte[capacity + 1]))),
+          name + ": over-capacity payload accepted");
+    }
+
+    // bits of a longer old payload past the new one are cleared
+    Image blank = new Image(100, 100, new int[100 * 100]);
+    byte[] ones = new byte[5000];
+    Arrays.fill(ones, (byte) 0xFF);
+    Image shrunk = lsb.updateBytes(lsb.encodeBytes(blank, new ByteArrayInputStream(ones), 3),
+        new ByteArrayInputStream(new byte[] { (byte) 0xFF }));
+    int set = 0;
+    int[] result = shrunk.getPixels();
+    for (int i = LSBStego.HEADER_PIXELS; i < result.length; i++) {
+      set += Integer.bitCount(result[i]);
+    }
+    require(set == 8, "stale payload bits left: " + (set - 8));
+
+    for (String extension : new String[] { ".sraw", ".png" }) {
+      updateFile(extension, random);
+    }
+  }
+
+  /**
+   * Updates a payload in a file of the given format, once with one byte
+   * changed and once unchanged.
+   */
+  private static void updateFile(String extension, Random random) throws Exception {
+    LSBStego lsb = LSBStego.instance();
+    byte[] payload = new byte[(int) LSBStego.payloadCapacity(512, 512, 4)];
+    random.nextBytes(payload);
+    File file = Files.createTempFile("lsb-update", extension).toFile();
+    try {
+      Image carrier = Synthetic.image(512, 512, 6);
+      require(FileReader.writeImage(lsb.encodeBytes(carrier, new ByteArrayInputStream(payload), 4), file),
+          extension + " write failed");
+      payload[payload.length / 2] ^= 0x40;
+      long rewritten = lsb.updateBytes(file, new ByteArrayInputStream(payload));
+      require(rewritten > 0 && rewritten <= LSBStego.TILE_PIXELS,
+          extension + ": one changed byte rewrote " + rewritten + " pixels");
+      require(Arrays.equals(decode(FileReader.readImage(file)), payload), extension + ": payload differs after update");
+      rewritten = lsb.updateBytes(file, new ByteArrayInputStream(payload));
+      require(rewritten == 0, extension + ": unchanged payload rewrote " + rewritten + " pixels");
+    } finally {
+      file.delete();
+    }
+  }
+
+  /** Requires 20 random ranges of encoded to match payload. */
+  private static void requireRanges(Image encoded, byte[] payload, Random random, String name) throws Exception {
+    for (int i = 0; i < 20; i++) {
+      int a = random.nextInt(payload.length + 1);
+      int b = random.nextInt(payload.length + 1);
+      int from = Math.min(a, b);
+      int to = Math.max(a, b);
+      require(Arrays.equals(decode(encoded, from, to), Arrays.copyOfRange(payload, from, to)),
+          name + ": bytes [" + from + ", " + to + ") differ");
+    }
+  }
+
+  /** Bytes [from, to) of the payload of a carrier. */
+  static byte[] decode(Image image, long from, long to) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    LSBStego.instance().decodeBytes(image, from, to, output);
+    return output.toByteArray();
+  }
+
+  /** Whole payload of a carrier. */
+  static byte[] decode(Image image) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long length = LSBStego.instance().decodeBytes(image, output);
+    require(length == output.size(), "decodeBytes returned " + length + " for " + output.size() + " bytes");
+    return output.toByteArray();
+  }
+
+  /** Whether action throws IllegalArgumentException. */
+  static boolean rejects(Check action) throws Exception {
+    try {
+      action.run();
+      return false;
+    } catch (IllegalArgumentException e) {
+      return true;
+    }
+  }
+}
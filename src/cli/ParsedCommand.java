@@ -1,8 +1,19 @@
 package cli;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Optional;
 
+import filereader.FileReader;
+import filereader.FileReader.ImageType;
+import filereader.Image;
+import processors.Batch;
+import processors.DCTStego;
 import processors.LSBStego;
 import processors.PCAStego;
 import processors.FourierStego;
@@ -20,7 +31,8 @@ public class ParsedCommand {
   public enum ProcessorType {
     kLSB(LSBStego.instance()),
     kPCA(PCAStego.instance()),
-    kFourier(FourierStego.instance());
+    kFourier(FourierStego.instance()),
+    kDCT(DCTStego.instance());
 
     /** static {@code ImageProcessor} instance associated with type */
     private ImageProcessor instance;
@@ -44,13 +56,31 @@ public class ParsedCommand {
     { "--prepare", "--to:" }
   };
 
+  /** bits per channel for 'bitnoise store:' when none are given */
+  private static final int DEFAULT_PAYLOAD_BITS = 4;
+
   /** terminal help message */
   private static final String help = "Type the processor and then the operation. " +
-      "Processor can be bitnoise or fourier; operation can be encode or decode. " +
+      "Processor can be bitnoise, fourier, dct or pca; operation can be encode or decode. " +
       "If you are encoding, you can optionally add \"--prepare\" to send the " +
       "encoded image to the decode folder or \"--to: \" plus a path to select a " +
       "custom folder. \"./\" also works when doing --to:. Alternatively, type 'bitnoise " +
-      "threshset: [number]' to adjust accuracy of bitnoise encoding. Type 'exit' to exit.";
+      "threshset: [number]' to adjust accuracy of bitnoise encoding. Type 'bitnoise store: [file] " +
+      "[bits]' to hide any file in the source image's lowest bits (default 4 per channel), " +
+      "'bitnoise extract: [file] [from to]' to recover it (or bytes [from, to) of it) from the " +
+      "decode image, 'bitnoise update: [image] [file]' to replace the file hidden in an image " +
+      "(rewriting only what changed), and 'bitnoise capacity: " +
+      "[bits]' to see how many bytes the source image can hold. Type 'fourier threadset: " +
+      "[latency|throughput] [fft threads]' to spread each fourier image over all cores " +
+      "(latency) or keep each on one thread (throughput). Type 'fourier precisionset: " +
+      "[double|float]' to choose the spectrum precision, and 'fourier precisioncheck' to see " +
+      "how far float results are from double ones on the current images. Type 'fourier " +
+      "sizeset: [exact|smooth]' to transform odd-sized images at their largest FFT-friendly " +
+      "block. Type 'dct blockset: [8|16]' to set the dct processor's block size. Type 'pca debugset: " +
+      "[on|off]' to write each pca component to the debug folder when encoding. Type 'batch [manifest] " +
+      "[workers]' to run the jobs in a CSV manifest (processor,source,payload,output[,parameters]) " +
+      "in parallel, or 'batch [processor] [source folder] [payload folder] [output folder] " +
+      "[workers]' to encode every same-named pair of files. Type 'exit' to exit.";
 
   /** processor to execute command */
   private ProcessorType processor;
@@ -173,6 +203,119 @@ public class ParsedCommand {
     if (command.equals("help")) {
       printHelpMessage();
       return true;
+    } else if (tokens[0].equals("batch")) { // run many jobs in parallel
+      Batch.execute(tokens);
+      return true;
+    } else if (tokens.length >= 3 && tokens.length <= 4
+        && (tokens[0] + tokens[1]).equals("fourierthreadset:")) { // detect setting fourier threading
+      try {
+        FourierStego.setThreading(FourierStego.Threading.valueOf(tokens[2].toUpperCase()));
+        if (tokens.length == 4) {
+          FourierStego.setFFTThreads(Integer.parseInt(tokens[3]));
+        }
+        return true;
+      } catch (IllegalArgumentException e) { // also covers NumberFormatException
+        throw new IllegalArgumentException();
+      }
+    } else if (tokens.length == 3
+        && (tokens[0] + tokens[1]).equals("fourierprecisionset:")) { // detect setting fourier precision
+      FourierStego.setPrecision(FourierStego.Precision.valueOf(tokens[2].toUpperCase()));
+      return true;
+    } else if (tokens.length == 3
+        && (tokens[0] + tokens[1]).equals("fouriersizeset:")) { // detect setting fourier transform size
+      FourierStego.setTransformSize(FourierStego.TransformSize.valueOf(tokens[2].toUpperCase()));
+      return true;
+    } else if (command.equals("fourier precisioncheck")) { // compare float and double on the current images
+      Image source = FileReader.readImage(FileReader.resolve(ImageType.Source, "source"));
+      Image encode = FileReader.readImage(FileReader.resolve(ImageType.Encode, "encode"));
+      System.out.println(FourierStego.comparePrecision(source, encode));
+      return true;
+    } else if (tokens.length == 3
+        && (tokens[0] + tokens[1]).equals("dctblockset:")) { // detect setting dct block size
+      try {
+        DCTStego.instance().setBlockSize(Integer.parseInt(tokens[2]));
+        return true;
+      } catch (IllegalArgumentException e) { // also covers NumberFormatException
+        throw new IllegalArgumentException();
+      }
+    } else if (tokens.length == 3
+        && (tokens[0] + tokens[1]).equals("pcadebugset:")) { // detect setting pca debug images
+      if (!tokens[2].equals("on") && !tokens[2].equals("off")) {
+        throw new IllegalArgumentException();
+      }
+      PCAStego.setDebug(tokens[2].equals("on"));
+      return true;
+    } else if (tokens.length >= 3 && tokens.length <= 4
+        && (tokens[0] + tokens[1]).equals("bitnoisestore:")) { // hide a file's bytes
+      int bits = (tokens.length == 4) ? Integer.parseInt(tokens[3]) : DEFAULT_PAYLOAD_BITS;
+      Image source = FileReader.readImage(FileReader.resolve(ImageType.Source, "source"));
+      if (source == null) { // FileReader has printed why
+        return true;
+      }
+      try (InputStream payload = new BufferedInputStream(
+          Files.newInputStream(FileReader.getFile(tokens[2]).toPath()))) {
+        System.out.println("Capacity: "
+            + LSBStego.payloadCapacity(source.width, source.height, bits) + " bytes");
+        Image output = LSBStego.instance().encodeBytes(source, payload, bits);
+        FileReader.writeImage(Image.toBufferedImage(output), ImageType.Output, "output.png");
+      } catch (IOException e) {
+        System.out.println("Could not read " + tokens[2] + ": " + e);
+      } catch (IllegalArgumentException e) { // payload too large
+        System.out.println(e.getMessage());
+      }
+      return true;
+    } else if ((tokens.length == 3 || tokens.length == 5)
+        && (tokens[0] + tokens[1]).equals("bitnoiseextract:")) { // recover a file's bytes, or a range of them
+      long from = (tokens.length == 5) ? Long.parseLong(tokens[3]) : 0;
+      long to = (tokens.length == 5) ? Long.parseLong(tokens[4]) : -1;
+      Image decode = FileReader.readImage(FileReader.resolve(ImageType.Decode, "decode"));
+      if (decode == null) { // FileReader has printed why
+        return true;
+      }
+      // check the header and range before the output file is created
+      long length;
+      try {
+        length = LSBStego.payloadLength(decode);
+      } catch (IllegalArgumentException e) { // no payload
+        System.out.println(e.getMessage());
+        return true;
+      }
+      if (to < 0) {
+        to = length;
+      }
+      if (from < 0 || from > to || to > length) {
+        System.out.println("range " + from + " to " + to + " is outside the payload of " + length + " bytes");
+        return true;
+      }
+      try (OutputStream output = new BufferedOutputStream(
+          Files.newOutputStream(FileReader.getFile(tokens[2]).toPath()))) {
+        System.out.println("Extracted " + LSBStego.instance().decodeBytes(decode, from, to, output)
+            + " bytes");
+      } catch (IOException e) {
+        System.out.println("Could not write " + tokens[2] + ": " + e);
+      }
+      return true;
+    } else if (tokens.length == 4
+        && (tokens[0] + tokens[1]).equals("bitnoiseupdate:")) { // replace a hidden file in place
+      try (InputStream payload = new BufferedInputStream(
+          Files.newInputStream(FileReader.getFile(tokens[3]).toPath()))) {
+        System.out.println("Rewrote " + LSBStego.instance().updateBytes(FileReader.getFile(tokens[2]), payload)
+            + " pixels");
+      } catch (IOException e) {
+        System.out.println("Could not update " + tokens[2] + ": " + e);
+      } catch (IllegalArgumentException e) { // no payload, or new payload too large
+        System.out.println(e.getMessage());
+      }
+      return true;
+    } else if (tokens.length == 3
+        && (tokens[0] + tokens[1]).equals("bitnoisecapacity:")) { // report byte capacity
+      Image source = FileReader.readImage(FileReader.resolve(ImageType.Source, "source"));
+      if (source == null) { // FileReader has printed why
+        return true;
+      }
+      System.out.println("Capacity: " + LSBStego.payloadCapacity(source.width, source.height,
+          Integer.parseInt(tokens[2])) + " bytes");
+      return true;
     } else if ((tokens[0] + tokens[1])
         .equals("bitnoisethreshset:")
         && tokens.length == 3) { // detect setting bitnoise threshold
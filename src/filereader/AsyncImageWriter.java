@@ -0,0 +1,107 @@
+package filereader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+// Writes images on background threads so the caller can start its next job
+// while the previous result is PNG-encoded and flushed to disk.
+//
+// At most capacity images are queued or being written at once; write blocks
+// until one finishes when the writer is full, so a fast producer cannot pile
+// up finished images in memory. Call flush at the end of a batch to wait for
+// every write and collect the ones that failed, and close when done.
+public final class AsyncImageWriter implements AutoCloseable {
+    private final ExecutorService writers;
+    // one permit per image that may be queued or in progress
+    private final Semaphore slots;
+    // writes not yet collected by flush, in submission order
+    private final List<Pending> pending = new ArrayList<>();
+
+    private static final class Pending {
+        final File output;
+        final Future<Boolean> written;
+
+        Pending(File output, Future<Boolean> written) {
+            this.output = output;
+            this.written = written;
+        }
+    }
+
+    public AsyncImageWriter(int threads, int capacity) {
+        if (threads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("threads and capacity must be positive");
+        }
+        this.writers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "image-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slots = new Semaphore(capacity);
+    }
+
+    // Queues image to be written to outputFile, as FileReader.writeImage would,
+    // blocking while the writer is full
+    public void write(Image image, File outputFile) throws InterruptedException {
+        write(image, new LinkedHashMap<>(), outputFile);
+    }
+
+    // As above, recording parameters in the header if writing a raw image file
+    public void write(Image image, Map<String, String> parameters, File outputFile)
+            throws InterruptedException {
+        slots.acquire();
+        try {
+            Future<Boolean> written = writers.submit(() -> {
+                try {
+                    return FileReader.writeImage(image, parameters, outputFile);
+                } finally {
+                    slots.release();
+                }
+            });
+            synchronized (pending) {
+                pending.add(new Pending(outputFile, written));
+            }
+        } catch (RuntimeException e) { // rejected after close
+            slots.release();
+            throw e;
+        }
+    }
+
+    // Waits for every write queued so far and returns the files that could
+    // not be written, in the order they were queued
+    public List<File> flush() throws InterruptedException {
+        List<Pending> waiting;
+        synchronized (pending) {
+            waiting = new ArrayList<>(pending);
+            pending.clear();
+        }
+        List<File> failed = new ArrayList<>();
+        for (Pending write : waiting) {
+            boolean ok;
+            try {
+                ok = write.written.get();
+            } catch (ExecutionException e) {
+                System.out.println("Image write failed: " + e.getCause());
+                ok = false;
+            }
+            if (!ok) {
+                failed.add(write.output);
+            }
+        }
+        return failed;
+    }
+
+    // Stops the writer threads once queued writes finish; call flush first to
+    // wait for them and see failures
+    @Override
+    public void close() {
+        writers.shutdown();
+    }
+}
@@ -0,0 +1,105 @@
+package filereader;
+
+import util.Parallel;
+
+// Means and covariance of an image's RGB channels from running sums.
+//
+// The sums are exact integers (channel values and their pairwise products),
+// so partial sums over any split of the pixels merge into exactly the same
+// totals in any order; an image is summed in one parallel pass over its
+// packed pixels with no per-pixel arrays.
+public final class ChannelCovariance {
+    private long count;
+    // sum of r, g, b
+    private final long[] sums = new long[3];
+    // sum of rr, rg, rb, gg, gb, bb
+    private final long[] products = new long[6];
+
+    // Sums for every pixel of image
+    public static ChannelCovariance of(Image image) {
+        ChannelCovariance total = new ChannelCovariance();
+        Parallel.forBands(image.height, image.width, (start, end) -> {
+            ChannelCovariance band = new ChannelCovariance();
+            int[] row = new int[image.width];
+            for (int y = start; y < end; y++) {
+                image.copyPixels(y * image.width, row, 0, image.width);
+                band.add(row, 0, row.length);
+            }
+            synchronized (total) {
+                total.merge(band);
+            }
+        });
+        return total;
+    }
+
+    // Add pixels[from, to)
+    public void add(int[] pixels, int from, int to) {
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        long rr = 0;
+        long rg = 0;
+        long rb = 0;
+        long gg = 0;
+        long gb = 0;
+        long bb = 0;
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            long red = (pixel >> 16) & 0xFF;
+            long green = (pixel >> 8) & 0xFF;
+            long blue = pixel & 0xFF;
+            r += red;
+            g += green;
+            b += blue;
+            rr += red * red;
+            rg += red * green;
+            rb += red * blue;
+            gg += green * green;
+            gb += green * blue;
+            bb += blue * blue;
+        }
+        count += to - from;
+        sums[0] += r;
+        sums[1] += g;
+        sums[2] += b;
+        products[0] += rr;
+        products[1] += rg;
+        products[2] += rb;
+        products[3] += gg;
+        products[4] += gb;
+        products[5] += bb;
+    }
+
+    // Add another set of partial sums to these
+    public void merge(ChannelCovariance other) {
+        count += other.count;
+        for (int i = 0; i < 3; i++) {
+            sums[i] += other.sums[i];
+        }
+        for (int i = 0; i < 6; i++) {
+            products[i] += other.products[i];
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double[] getMeans() {
+        return new double[] { (double) sums[0] / count, (double) sums[1] / count, (double) sums[2] / count };
+    }
+
+    // Sample covariance (divided by n - 1, as commons-math's Covariance is)
+    public double[][] getCovariance() {
+        double[][] covariance = new double[3][3];
+        for (int i = 0, k = 0; i < 3; i++) {
+            for (int j = i; j < 3; j++, k++) {
+                // sum((x - mx)(y - my)) = sum(xy) - sum(x) sum(y) / n
+                double centered = products[k] - (double) sums[i] * sums[j] / count;
+                covariance[i][j] = centered / (count - 1);
+                covariance[j][i] = covariance[i][j];
+            }
+        }
+        return covariance;
+    }
+}
@@ -1,7 +1,11 @@
 package filereader;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.imageio.ImageIO;
 
 public class FileReader {
@@ -15,13 +19,47 @@ public class FileReader {
         Debug
     }
 
+    // Produces rows [y, y + rows) of an image being written strip by strip
+    public interface StripSource {
+        Image strip(int y, int rows);
+    }
+
+    public static File getFile(ImageType type, String relativeFilePath) {
+        String basePath = new File("").getAbsolutePath() + File.separator + "Images" + File.separator + type;
+        return new File(basePath + File.separator + relativeFilePath);
+    }
+
+    public static File getFile(String relativeFilePath) {
+        if (relativeFilePath.substring(0, 1).equals(".")) {
+            return new File(new File("").getAbsolutePath() + relativeFilePath.substring(1));
+        }
+        return new File(relativeFilePath);
+    }
+
+    // The newest existing file named baseName plus ".sraw" or ".png" in the
+    // folder for type (the PNG if neither exists), so chained operations can
+    // use whichever format was last written
+    public static File resolve(ImageType type, String baseName) {
+        File png = getFile(type, baseName + ".png");
+        File raw = getFile(type, baseName + RawImageFile.EXTENSION);
+        if (raw.exists() && (!png.exists() || raw.lastModified() >= png.lastModified())) {
+            return raw;
+        }
+        return png;
+    }
+
     public static Image readImage(ImageType type, String relativeFilePath) {
-        try {
+        return readImage(getFile(type, relativeFilePath));
+    }
 
-            String basePath = new File("").getAbsolutePath() + File.separator + "Images" + File.separator + type;
-            String fullPath = basePath + File.separator + relativeFilePath;
-            System.out.println("Reading image from: " + fullPath);
-            BufferedImage img = ImageIO.read(new File(fullPath));
+    // Reads a PNG (or anything else ImageIO reads), or maps a raw image file
+    public static Image readImage(File file) {
+        try {
+            System.out.println("Reading image from: " + file.getPath());
+            if (RawImageFile.isRaw(file)) {
+                return RawImageFile.read(file);
+            }
+            BufferedImage img = ImageIO.read(file);
             return new Image(img);
         } catch (Exception e) {
             System.out.println("Image read failed: " + e);
@@ -29,30 +67,37 @@ public class FileReader {
         return null;
     }
 
-    public static boolean writeImage(BufferedImage image, ImageType type, String relativeFilePath) {
+    // Writes a raw image file if outputFile ends with ".sraw", a PNG otherwise
+    public static boolean writeImage(Image image, File outputFile) {
+        return writeImage(image, new LinkedHashMap<>(), outputFile);
+    }
+
+    // As above, recording parameters in the header if writing a raw image file
+    public static boolean writeImage(Image image, Map<String, String> parameters, File outputFile) {
+        if (!RawImageFile.isRaw(outputFile)) {
+            return writeImage(Image.toBufferedImage(image), outputFile);
+        }
         try {
-            String basePath = new File("").getAbsolutePath() + File.separator + "Images" + File.separator + type;
-            String fullPath = basePath + File.separator + relativeFilePath;
-            System.out.println("Writing image to: " + fullPath);
-            File outputFile = new File(fullPath);
-            outputFile.getParentFile().mkdirs();
-            return ImageIO.write(image, "png", outputFile);
+            System.out.println("Writing image to: " + outputFile.getPath());
+            RawImageFile.write(image, parameters, outputFile);
+            return true;
         } catch (Exception e) {
             System.out.println("Image write failed: " + e);
         }
         return false;
     }
 
+    public static boolean writeImage(BufferedImage image, ImageType type, String relativeFilePath) {
+        return writeImage(image, getFile(type, relativeFilePath));
+    }
+
     public static boolean writeImage(BufferedImage image, String relativeFilePath) {
+        return writeImage(image, getFile(relativeFilePath));
+    }
+
+    private static boolean writeImage(RenderedImage image, File outputFile) {
         try {
-            String path;
-            if (relativeFilePath.substring(0, 1).equals(".")) {
-                path = new File("").getAbsolutePath() + relativeFilePath.substring(1);
-            } else {
-                path = relativeFilePath;
-            }
-            System.out.println("Writing image to: " + path);
-            File outputFile = new File(path);
+            System.out.println("Writing image to: " + outputFile.getPath());
             outputFile.getParentFile().mkdirs();
             return ImageIO.write(image, "png", outputFile);
         } catch (Exception e) {
@@ -60,4 +105,47 @@ public class FileReader {
         }
         return false;
     }
+
+    // Writes a width x height PNG whose rows are produced stripHeight rows at a
+    // time by strips, so the whole image is never held in memory
+    public static boolean writeImage(int width, int height, int stripHeight, StripSource strips,
+            File outputFile) {
+        return writeImage(new StripImage(width, height, Math.min(stripHeight, height), strips), outputFile);
+    }
+
+    // Opens an image for reading in bands of rows with readStrip without
+    // decoding it (see StripReader for what each band costs). The reader must
+    // be released with closeImage.
+    public static StripReader openImage(File file) {
+        try {
+            System.out.println("Opening image: " + file.getPath());
+            return StripReader.open(file);
+        } catch (Exception e) {
+            System.out.println("Image open failed: " + e);
+        }
+        return null;
+    }
+
+    // Reads the full-width band of rows [y, y + rows) of an opened image,
+    // failing the whole caller (a streamed encode or decode) with
+    // IllegalStateException if it cannot be read
+    public static Image readStrip(StripReader reader, int y, int rows) {
+        try {
+            return reader.read(y, rows);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read rows " + y + " to " + (y + rows), e);
+        }
+    }
+
+    // Releases a reader from openImage; null (a failed open) is ignored
+    public static void closeImage(StripReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (Exception e) {
+            System.out.println("Image close failed: " + e);
+        }
+    }
 }
@@ -1,289 +1,360 @@
 package filereader;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
 
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.EigenDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
-import org.apache.commons.math3.stat.correlation.Covariance;
+
+import util.Parallel;
 
 public class Image {
-    // RGB channels (0-255)
-    public final int[][] r;
-    public final int[][] g;
-    public final int[][] b;
     public final int width;
     public final int height;
 
-    // L*a*b* channels (L in [0,100] and a,b roughly in -128..127)
-    public final double[][] labL;
-    public final double[][] labA;
-    public final double[][] labB;
+    // Packed RGB pixels (0xRRGGBB), stored row-major: index = y * width + x.
+    // Computed on first access when the image was built from Lab, or copied
+    // out of mapped on first access when the image wraps a buffer.
+    private volatile int[] rgb;
+
+    // Packed pixels in the same layout, read in place from a buffer (usually a
+    // memory-mapped raw file, see RawImageFile) instead of rgb. Null otherwise.
+    private final IntBuffer mapped;
+
+    // L*a*b* planes { L, a, b }, stored row-major like rgb
+    // (L in [0,100] and a,b roughly in -128..127).
+    // Computed on first access when the image was built from RGB.
+    private volatile double[][] lab;
 
-    // Constructor from a BufferedImage (RGB -> Lab conversion)
+    // true if RGB is the colour space this image was built from, false if Lab.
+    // Only the other (derived) colour space may be released.
+    private final boolean rgbSource;
+
+    // Constructor from a BufferedImage (Lab is computed lazily)
     public Image(BufferedImage image) {
         width = image.getWidth();
         height = image.getHeight();
-        r = new int[width][height];
-        g = new int[width][height];
-        b = new int[width][height];
-        labL = new double[width][height];
-        labA = new double[width][height];
-        labB = new double[width][height];
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int rgb = image.getRGB(x, y);
-                int red = (rgb >> 16) & 0xFF;
-                int green = (rgb >> 8) & 0xFF;
-                int blue = rgb & 0xFF;
-                r[x][y] = red;
-                g[x][y] = green;
-                b[x][y] = blue;
-
-                double[] lab = rgbToLab(red, green, blue);
-                labL[x][y] = lab[0];
-                labA[x][y] = lab[1];
-                labB[x][y] = lab[2];
-            }
-        }
+        rgbSource = true;
+        mapped = null;
+        int[] pixels = new int[width * height];
+        readPixels(image, pixels);
+        rgb = pixels;
     }
 
-    // Constructor from individual RGB arrays (computes Lab from RGB)
-    public Image(int[][] r, int[][] g, int[][] b) {
-        this.r = r;
-        this.g = g;
-        this.b = b;
-        this.width = r.length;
-        this.height = r[0].length;
-        labL = new double[width][height];
-        labA = new double[width][height];
-        labB = new double[width][height];
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                double[] lab = rgbToLab(r[x][y], g[x][y], b[x][y]);
-                labL[x][y] = lab[0];
-                labA[x][y] = lab[1];
-                labB[x][y] = lab[2];
-            }
-        }
+    // Constructor from packed 0xRRGGBB pixels in row-major order (Lab is
+    // computed lazily). The array is used as the backing store, not copied.
+    public Image(int width, int height, int[] rgb) {
+        this.width = width;
+        this.height = height;
+        this.rgb = rgb;
+        rgbSource = true;
+        mapped = null;
     }
 
-    // Constructor from L*a*b* arrays (computes RGB from Lab)
-    public Image(double[][] labL, double[][] labA, double[][] labB) {
-        this.labL = labL;
-        this.labA = labA;
-        this.labB = labB;
-        this.width = labL.length;
-        this.height = labL[0].length;
-        r = new int[width][height];
-        g = new int[width][height];
-        b = new int[width][height];
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int[] rgb = labToRgb(labL[x][y], labA[x][y], labB[x][y]);
-                r[x][y] = rgb[0];
-                g[x][y] = rgb[1];
-                b[x][y] = rgb[2];
-            }
-        }
+    // Constructor wrapping packed 0xRRGGBB pixels in row-major order held in a
+    // buffer (positions 0 to width * height). Pixels are read from the buffer in
+    // place; getPixels copies them into an array the first time it is called.
+    public Image(int width, int height, IntBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        rgbSource = true;
+        mapped = pixels;
+    }
+
+    // Constructor from row-major L*a*b* planes (RGB is computed lazily)
+    public Image(int width, int height, double[] labL, double[] labA, double[] labB) {
+        this.width = width;
+        this.height = height;
+        this.lab = new double[][] { labL, labA, labB };
+        rgbSource = false;
+        mapped = null;
     }
 
-    // Existing constructor (example: combining three images) – left unchanged
+    // Existing constructor (example: combining three images) – takes the red
+    // channel of r, the green channel of g and the blue channel of b
     public Image(Image r, Image g, Image b) {
-        this.r = r.r;
-        this.g = g.g;
-        this.b = b.b;
         this.width = r.width;
         this.height = r.height;
-        // Note: Lab channels could be computed here if desired.
-        labL = new double[width][height];
-        labA = new double[width][height];
-        labB = new double[width][height];
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                double[] lab = rgbToLab(this.r[x][y], this.g[x][y], this.b[x][y]);
-                labL[x][y] = lab[0];
-                labA[x][y] = lab[1];
-                labB[x][y] = lab[2];
+        rgbSource = true;
+        mapped = null;
+        int[] red = r.getPixels();
+        int[] green = g.getPixels();
+        int[] blue = b.getPixels();
+        int[] pixels = new int[width * height];
+        Parallel.forBands(height, width, (start, end) -> {
+            for (int i = start * width; i < end * width; i++) {
+                pixels[i] = (red[i] & 0xFF0000) | (green[i] & 0x00FF00) | (blue[i] & 0x0000FF);
             }
+        });
+        rgb = pixels;
+    }
+
+    // Read every pixel of image into packed 0xRRGGBB pixels, one scanline at a
+    // time. Common sRGB raster layouts copy raw samples straight out of the
+    // raster (in parallel row bands); anything else goes through the colour
+    // model via getRGB on the calling thread, since colour models with ICC
+    // profiles are not safe to share between threads.
+    private static void readPixels(BufferedImage image, int[] pixels) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = image.getRaster();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                Parallel.forBands(height, width, (start, end) -> {
+                    int[] row = new int[width];
+                    for (int y = start; y < end; y++) {
+                        raster.getDataElements(0, y, width, 1, row);
+                        int offset = y * width;
+                        for (int x = 0; x < width; x++) {
+                            pixels[offset + x] = row[x] & 0xFFFFFF;
+                        }
+                    }
+                });
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                // data elements come back in band order: R, G, B (, A)
+                int bands = raster.getNumBands();
+                Parallel.forBands(height, width, (start, end) -> {
+                    byte[] row = new byte[width * bands];
+                    for (int y = start; y < end; y++) {
+                        raster.getDataElements(0, y, width, 1, row);
+                        int offset = y * width;
+                        for (int x = 0, i = 0; x < width; x++, i += bands) {
+                            pixels[offset + x] = ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8)
+                                    | (row[i + 2] & 0xFF);
+                        }
+                    }
+                });
+                break;
+            default:
+                image.getRGB(0, 0, width, height, pixels, 0, width);
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] &= 0xFFFFFF;
+                }
+                break;
         }
     }
 
     // Convert this image (RGB) to a BufferedImage
     public static BufferedImage toBufferedImage(Image i) {
         BufferedImage image = new BufferedImage(i.width, i.height, BufferedImage.TYPE_INT_RGB);
-        for (int x = 0; x < i.width; x++) {
-            for (int y = 0; y < i.height; y++) {
-                int red = i.r[x][y] & 0xFF;
-                int green = i.g[x][y] & 0xFF;
-                int blue = i.b[x][y] & 0xFF;
-                int rgb = (red << 16) | (green << 8) | blue;
-                image.setRGB(x, y, rgb);
+        // TYPE_INT_RGB stores exactly our packed layout, so rows go in as raw
+        // data elements (in parallel row bands). Writing through the raster,
+        // not its DataBuffer array, keeps the image managed, i.e. eligible for
+        // hardware acceleration, as readPixels does on the way in.
+        WritableRaster raster = image.getRaster();
+        Parallel.forBands(i.height, i.width, (start, end) -> {
+            int[] row = new int[i.width];
+            for (int y = start; y < end; y++) {
+                i.copyPixels(y * i.width, row, 0, i.width);
+                raster.setDataElements(0, y, i.width, 1, row);
             }
-        }
+        });
         return image;
     }
 
-    // Getter for the RGB channels: returns a 3D array: [channel][x][y]
-    public int[][][] getRGB() {
-        return new int[][][] { r, g, b };
+    // Pack three channel values into a 0xRRGGBB pixel. Each value is masked to
+    // its low 8 bits, matching what toBufferedImage has always written out.
+    public static int pack(int red, int green, int blue) {
+        return ((red & 0xFF) << 16) | ((green & 0xFF) << 8) | (blue & 0xFF);
     }
 
-    // Getter for the L*a*b* channels: returns a 3D array: [channel][x][y]
-    // (Channel 0 = L, 1 = a, 2 = b)
-    public double[][][] getLab() {
-        return new double[][][] { labL, labA, labB };
+    // --- Pixel accessors (x is the column, y is the row) ---
+    public int getRed(int x, int y) {
+        return (getPixel(x, y) >> 16) & 0xFF;
     }
 
-    // Optionally, a single method that returns the channels based on a string
-    // argument.
-    // (You could also use an enum here.)
-    public Object getColorSpace(String colorSpace) {
-        if (colorSpace.equalsIgnoreCase("RGB")) {
-            return getRGB();
-        } else if (colorSpace.equalsIgnoreCase("LAB") || colorSpace.equalsIgnoreCase("L*a*b*")) {
-            return getLab();
-        } else {
-            throw new IllegalArgumentException("Unknown color space: " + colorSpace);
-        }
+    public int getGreen(int x, int y) {
+        return (getPixel(x, y) >> 8) & 0xFF;
     }
 
-    // --- Conversion helper methods ---
-    // Convert a single RGB pixel (0-255) to L*a*b*
-    private static double[] rgbToLab(int r, int g, int b) {
-        // 1. Normalize and linearize sRGB
-        double R = r / 255.0;
-        double G = g / 255.0;
-        double B = b / 255.0;
+    public int getBlue(int x, int y) {
+        return getPixel(x, y) & 0xFF;
+    }
 
-        R = (R > 0.04045) ? Math.pow((R + 0.055) / 1.055, 2.4) : (R / 12.92);
-        G = (G > 0.04045) ? Math.pow((G + 0.055) / 1.055, 2.4) : (G / 12.92);
-        B = (B > 0.04045) ? Math.pow((B + 0.055) / 1.055, 2.4) : (B / 12.92);
+    // Packed 0xRRGGBB value of a single pixel
+    public int getPixel(int x, int y) {
+        int[] pixels = rgb;
+        if (pixels == null && mapped != null) {
+            return mapped.get(y * width + x);
+        }
+        return (pixels != null) ? pixels[y * width + x] : getPixels()[y * width + x];
+    }
 
-        // 2. Convert to XYZ (D65)
-        double X = R * 0.4124564 + G * 0.3575761 + B * 0.1804375;
-        double Y = R * 0.2126729 + G * 0.7151522 + B * 0.0721750;
-        double Z = R * 0.0193339 + G * 0.1191920 + B * 0.9503041;
+    // Copy length packed pixels starting at row-major index from into dst,
+    // reading a wrapped buffer in place rather than through getPixels
+    public void copyPixels(int from, int[] dst, int dstOffset, int length) {
+        int[] pixels = rgb;
+        if (pixels == null && mapped != null) {
+            IntBuffer view = mapped.duplicate();
+            view.position(from);
+            view.get(dst, dstOffset, length);
+            return;
+        }
+        System.arraycopy((pixels != null) ? pixels : getPixels(), from, dst, dstOffset, length);
+    }
 
-        // 3. Normalize for the D65 white point
-        X /= 0.95047;
-        // Y is already in the proper scale (Y/1.0)
-        Z /= 1.08883;
+    // Backing packed 0xRRGGBB array, row-major (index = y * width + x).
+    // Returned without copying so processors can scan it contiguously.
+    // Converted from Lab on first call if this image was built from Lab, or
+    // copied out of the buffer on first call if this image wraps one.
+    public int[] getPixels() {
+        int[] pixels = rgb;
+        return (pixels != null) ? pixels : computeRgb();
+    }
 
-        // 4. Convert XYZ to L*a*b*
-        // Use the standard threshold 0.008856 (≈6/29³)
-        double epsilon = 0.008856;
-        double fx = (X > epsilon) ? Math.cbrt(X) : (7.787 * X + 16.0 / 116);
-        double fy = (Y > epsilon) ? Math.cbrt(Y) : (7.787 * Y + 16.0 / 116);
-        double fz = (Z > epsilon) ? Math.cbrt(Z) : (7.787 * Z + 16.0 / 116);
+    // Backing row-major L*a*b* planes, returned without copying.
+    // Converted from RGB on first call if this image was built from RGB.
+    public double[] getLabL() {
+        return getLabPlanes()[0];
+    }
 
-        double L = (116 * fy) - 16;
-        double aVal = 500 * (fx - fy);
-        double bVal = 200 * (fy - fz);
+    public double[] getLabA() {
+        return getLabPlanes()[1];
+    }
 
-        return new double[] { L, aVal, bVal };
+    public double[] getLabB() {
+        return getLabPlanes()[2];
     }
 
-    // Convert a single L*a*b* pixel to RGB (0-255)
-    private static int[] labToRgb(double L, double a, double bVal) {
-        // 1. Convert Lab to XYZ
-        double fy = (L + 16) / 116.0;
-        double fx = fy + a / 500.0;
-        double fz = fy - bVal / 200.0;
+    private double[][] getLabPlanes() {
+        double[][] planes = lab;
+        return (planes != null) ? planes : computeLab();
+    }
 
-        double epsilon = 0.008856;
-        double X = (fx * fx * fx > epsilon) ? (fx * fx * fx) : ((fx - 16.0 / 116) / 7.787);
-        double Y = (L > (epsilon * 903.3)) ? (fy * fy * fy) : (L / 903.3);
-        double Z = (fz * fz * fz > epsilon) ? (fz * fz * fz) : ((fz - 16.0 / 116) / 7.787);
+    // Whether the Lab planes are currently held in memory
+    public boolean hasLab() {
+        return lab != null;
+    }
 
-        // Denormalize for D65 white point
-        X *= 0.95047;
-        Z *= 1.08883;
+    // Whether the packed RGB pixels are currently held in memory (or readable
+    // in place from a wrapped buffer)
+    public boolean hasRgb() {
+        return rgb != null || mapped != null;
+    }
 
-        // 2. Convert XYZ to linear RGB
-        double R_lin = X * 3.2404542 + Y * (-1.5371385) + Z * (-0.4985314);
-        double G_lin = X * (-0.9692660) + Y * 1.8760108 + Z * 0.0415560;
-        double B_lin = X * 0.0556434 + Y * (-0.2040259) + Z * 1.0572252;
+    // Drop the Lab planes if they were derived from RGB. They are recomputed
+    // if accessed again. Returns false (and keeps them) if Lab is the source.
+    public synchronized boolean releaseLab() {
+        if (!rgbSource) {
+            return false;
+        }
+        lab = null;
+        return true;
+    }
 
-        // 3. Apply gamma correction
-        double R = (R_lin <= 0.0031308) ? 12.92 * R_lin : (1.055 * Math.pow(R_lin, 1.0 / 2.4) - 0.055);
-        double G = (G_lin <= 0.0031308) ? 12.92 * G_lin : (1.055 * Math.pow(G_lin, 1.0 / 2.4) - 0.055);
-        double B = (B_lin <= 0.0031308) ? 12.92 * B_lin : (1.055 * Math.pow(B_lin, 1.0 / 2.4) - 0.055);
+    // Drop the RGB pixels if they were derived from Lab or copied out of a
+    // wrapped buffer. They are recomputed if accessed again. Returns false (and
+    // keeps them) if an RGB array is the source.
+    public synchronized boolean releaseRgb() {
+        if (rgbSource && mapped == null) {
+            return false;
+        }
+        rgb = null;
+        return true;
+    }
 
-        // 4. Clamp to [0,1] then scale to [0,255]
-        int rVal = (int) Math.round(Math.max(0, Math.min(1, R)) * 255);
-        int gVal = (int) Math.round(Math.max(0, Math.min(1, G)) * 255);
-        int bInt = (int) Math.round(Math.max(0, Math.min(1, B)) * 255);
+    // Lazily fill the Lab planes from the packed pixels
+    private synchronized double[][] computeLab() {
+        if (lab != null) {
+            return lab;
+        }
+        int[] pixels = getPixels();
+        double[] labL = new double[pixels.length];
+        double[] labA = new double[pixels.length];
+        double[] labB = new double[pixels.length];
+        Parallel.forBands(height, width, (start, end) -> LabConverter.rgbToLab(pixels,
+                start * width, (end - start) * width, labL, labA, labB));
+        lab = new double[][] { labL, labA, labB };
+        return lab;
+    }
 
-        return new int[] { rVal, gVal, bInt };
+    // Lazily fill the packed pixels from the wrapped buffer or the Lab planes
+    private synchronized int[] computeRgb() {
+        if (rgb != null) {
+            return rgb;
+        }
+        int[] pixels = new int[width * height];
+        if (mapped != null) {
+            copyPixels(0, pixels, 0, pixels.length);
+            rgb = pixels;
+            return rgb;
+        }
+        double[][] planes = lab;
+        Parallel.forBands(height, width, (start, end) -> LabConverter.labToRgb(planes[0], planes[1],
+                planes[2], start * width, (end - start) * width, pixels));
+        rgb = pixels;
+        return rgb;
     }
 
-    // Add this method to your Image class
-    public static Image scale(Image image, int newWidth, int newHeight) {
-        // Create new arrays for the scaled RGB channels.
-        int[][] newR = new int[newWidth][newHeight];
-        int[][] newG = new int[newWidth][newHeight];
-        int[][] newB = new int[newWidth][newHeight];
-
-        // When newWidth or newHeight is 1, avoid division by zero.
-        double scaleX = (newWidth > 1) ? (double) (image.width - 1) / (newWidth - 1) : 0;
-        double scaleY = (newHeight > 1) ? (double) (image.height - 1) / (newHeight - 1) : 0;
-
-        for (int nx = 0; nx < newWidth; nx++) {
-            // Compute the corresponding x in the source image.
-            double x = (newWidth > 1) ? nx * scaleX : 0;
-            int x1 = (int) Math.floor(x);
-            int x2 = Math.min(x1 + 1, image.width - 1);
-            double dx = x - x1;
-
-            for (int ny = 0; ny < newHeight; ny++) {
-                // Compute the corresponding y in the source image.
-                double y = (newHeight > 1) ? ny * scaleY : 0;
-                int y1 = (int) Math.floor(y);
-                int y2 = Math.min(y1 + 1, image.height - 1);
-                double dy = y - y1;
-
-                // Bilinear interpolation for red channel
-                double red = (1 - dx) * (1 - dy) * image.r[x1][y1] +
-                        dx * (1 - dy) * image.r[x2][y1] +
-                        (1 - dx) * dy * image.r[x1][y2] +
-                        dx * dy * image.r[x2][y2];
-
-                // Bilinear interpolation for green channel
-                double green = (1 - dx) * (1 - dy) * image.g[x1][y1] +
-                        dx * (1 - dy) * image.g[x2][y1] +
-                        (1 - dx) * dy * image.g[x1][y2] +
-                        dx * dy * image.g[x2][y2];
-
-                // Bilinear interpolation for blue channel
-                double blue = (1 - dx) * (1 - dy) * image.b[x1][y1] +
-                        dx * (1 - dy) * image.b[x2][y1] +
-                        (1 - dx) * dy * image.b[x1][y2] +
-                        dx * dy * image.b[x2][y2];
-
-                // Round and clamp the values to valid [0,255] range.
-                newR[nx][ny] = (int) Math.round(Math.max(0, Math.min(255, red)));
-                newG[nx][ny] = (int) Math.round(Math.max(0, Math.min(255, green)));
-                newB[nx][ny] = (int) Math.round(Math.max(0, Math.min(255, blue)));
+    // Getter for the RGB channels: returns a 3D array: [channel][x][y]
+    // (Built as a copy from the packed pixels.)
+    public int[][][] getRGB() {
+        int[] pixels = getPixels();
+        int[][][] channels = new int[3][width][height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * width + x];
+                channels[0][x][y] = (pixel >> 16) & 0xFF;
+                channels[1][x][y] = (pixel >> 8) & 0xFF;
+                channels[2][x][y] = pixel & 0xFF;
             }
         }
-        // Use the existing constructor that computes Lab channels from RGB arrays.
-        return new Image(newR, newG, newB);
+        return channels;
     }
 
-    public static double[][] getImageData(Image image) {
-        double[][] data = new double[image.width * image.height][3];
-        for (int x = 0; x < image.width; x++) {
-            for (int y = 0; y < image.height; y++) {
-                data[x * image.height + y][0] = image.r[x][y];
-                data[x * image.height + y][1] = image.g[x][y];
-                data[x * image.height + y][2] = image.b[x][y];
+    // Getter for the L*a*b* channels: returns a 3D array: [channel][x][y]
+    // (Channel 0 = L, 1 = a, 2 = b; built as a copy from the planes.)
+    public double[][][] getLab() {
+        double[][] planes = getLabPlanes();
+        double[][][] channels = new double[3][width][height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * width + x;
+                channels[0][x][y] = planes[0][index];
+                channels[1][x][y] = planes[1][index];
+                channels[2][x][y] = planes[2][index];
             }
         }
+        return channels;
+    }
+
+    // Optionally, a single method that returns the channels based on a string
+    // argument.
+    // (You could also use an enum here.)
+    public Object getColorSpace(String colorSpace) {
+        if (colorSpace.equalsIgnoreCase("RGB")) {
+            return getRGB();
+        } else if (colorSpace.equalsIgnoreCase("LAB") || colorSpace.equalsIgnoreCase("L*a*b*")) {
+            return getLab();
+        } else {
+            throw new IllegalArgumentException("Unknown color space: " + colorSpace);
+        }
+    }
+
+    // Bilinear scale to newWidth x newHeight (see Resampler)
+    public static Image scale(Image image, int newWidth, int newHeight) {
+        return scale(image, newWidth, newHeight, Resampler.Filter.BILINEAR);
+    }
+
+    // Scale to newWidth x newHeight with the given filter. AREA gives better
+    // results than BILINEAR for large downscales.
+    public static Image scale(Image image, int newWidth, int newHeight, Resampler.Filter filter) {
+        return Resampler.resample(image, newWidth, newHeight, filter);
+    }
+
+    public static double[][] getImageData(Image image) {
+        // One row per pixel, in the row-major order of the packed pixels
+        int[] pixels = image.getPixels();
+        double[][] data = new double[pixels.length][];
+        Parallel.forBands(pixels.length, 1, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                int pixel = pixels[i];
+                data[i] = new double[] { (pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF };
+            }
+        });
         return data;
     }
 
@@ -291,12 +362,16 @@ public class Image {
         int n = data.length;
         int dim = data[0].length;
 
-        double[][] centeredData = new double[n][dim];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < dim; j++) {
-                centeredData[i][j] = data[i][j] - means[j];
+        double[][] centeredData = new double[n][];
+        Parallel.forBands(n, dim, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                double[] row = new double[dim];
+                for (int j = 0; j < dim; j++) {
+                    row[j] = data[i][j] - means[j];
+                }
+                centeredData[i] = row;
             }
-        }
+        });
         return centeredData;
     }
 
@@ -316,66 +391,62 @@ public class Image {
         return means;
     }
 
+    // Basis of a fresh PCA fit; prefer PCAModel.fit to reuse one fit
     public static RealMatrix getTransformationMatrix(Image image) {
-        double[][] data = getImageData(image);
-        double[][] centeredData = centerData(data, getMeans(data));
-        RealMatrix matrix = new Array2DRowRealMatrix(centeredData);
-        RealMatrix covarianceMatrix = new Covariance(matrix).getCovarianceMatrix();
-        EigenDecomposition ed = new EigenDecomposition(covarianceMatrix);
-        RealVector pc1 = ed.getEigenvector(0);
-        RealVector pc2 = ed.getEigenvector(1);
-        RealVector pc3 = ed.getEigenvector(2);
-
-        int dim = data[0].length;
-
-        RealMatrix transformationMatrix = new Array2DRowRealMatrix(dim, dim);
-        transformationMatrix.setColumnVector(0, pc1);
-        transformationMatrix.setColumnVector(1, pc2);
-        transformationMatrix.setColumnVector(2, pc3);
-
-        return transformationMatrix;
+        return PCAModel.fit(image).getBasis();
     }
 
+    // Components of each pixel (one row of three per pixel, in the row-major
+    // order of getImageData); applyTransformationPlanes avoids the per-pixel
+    // arrays
     public static double[][] applyTransformationMatrix(Image image) {
-        RealMatrix transformationMatrix = getTransformationMatrix(image);
-        double[][] ogData = getImageData(image);
-        double[][] data = centerData(ogData, getMeans(ogData));
-        double[][] transformedData = new Array2DRowRealMatrix(data)
-                .multiply(transformationMatrix)
-                .getData();
-        return transformedData;
+        return toRows(applyTransformationPlanes(image));
     }
 
+    // Image from per-pixel rows as applyTransformationMatrix returns them
     public static Image imageFromTransform(double[][] transformedData, RealMatrix transform, double[] means, int width,
             int height) {
-        // Inverse transform (note: if transform is orthogonal, its transpose is its
-        // inverse)
-        double[][] originalData = new Array2DRowRealMatrix(transformedData)
-                .multiply(transform.transpose())
-                .getData();
-
-        // Allocate Lab channels with the original image dimensions.
-        int[][] r = new int[width][height];
-        int[][] g = new int[width][height];
-        int[][] b = new int[width][height];
-
-        // Reconstruct the Lab channels from the data.
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int index = x * height + y;
-                r[x][y] = (int) Math.round(Math.max(0, Math.min(originalData[index][0] + means[0], 255)));
-                g[x][y] = (int) Math.round(Math.max(0, Math.min(originalData[index][1] + means[1], 255)));
-                b[x][y] = (int) Math.round(Math.max(0, Math.min(originalData[index][2] + means[2], 255)));
+        return imageFromTransformPlanes(toPlanes(transformedData), transform, means, width, height);
+    }
 
+    // Component planes (components[k][y * width + x]), see PCAModel
+    public static double[][] applyTransformationPlanes(Image image) {
+        return PCAModel.fit(image).project(image);
+    }
+
+    // Image from component planes as applyTransformationPlanes returns them
+    public static Image imageFromTransformPlanes(double[][] components, RealMatrix transform, double[] means,
+            int width, int height) {
+        return new PCAModel(means, transform).reconstruct(components, width, height);
+    }
+
+    // n x 3 rows from 3 planes of n
+    private static double[][] toRows(double[][] planes) {
+        double[][] rows = new double[planes[0].length][];
+        Parallel.forBands(rows.length, 3, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                rows[i] = new double[] { planes[0][i], planes[1][i], planes[2][i] };
             }
-        }
-        return new Image(r, g, b);
+        });
+        return rows;
+    }
+
+    // 3 planes of n from n x 3 rows
+    private static double[][] toPlanes(double[][] rows) {
+        double[][] planes = { new double[rows.length], new double[rows.length], new double[rows.length] };
+        Parallel.forBands(rows.length, 3, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                for (int k = 0; k < 3; k++) {
+                    planes[k][i] = rows[i][k];
+                }
+            }
+        });
+        return planes;
     }
 
     public static Image applyTransformation(Image image) {
-        double[][] transformedData = applyTransformationMatrix(image);
-        return imageFromTransform(transformedData, getTransformationMatrix(image), getMeans(getImageData(image)),
-                image.width, image.height);
+        PCAModel model = PCAModel.fit(image);
+        return model.reconstruct(model.project(image), image.width, image.height);
     }
 
 }
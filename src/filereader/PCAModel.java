@@ -0,0 +1,119 @@
+package filereader;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import util.Parallel;
+import util.SymmetricEigen3;
+
+// Principal components of an image's RGB pixels: the channel means and a 3x3
+// basis whose columns are the eigenvectors of the channel covariance,
+// strongest first. Fitting costs a full pass over the image, so fit once and
+// use the model for every projection and reconstruction with that basis.
+//
+// Components are held as planes, one double per pixel in the row-major order
+// of the packed pixels (components[k][y * width + x]), so projection and
+// reconstruction are single fused passes with no per-pixel arrays.
+public final class PCAModel {
+    private final double[] means;
+    // basis[channel][component]
+    private final double[][] basis;
+
+    public PCAModel(double[] means, RealMatrix basis) {
+        this.means = means.clone();
+        this.basis = basis.getData();
+    }
+
+    // Means and covariance come from one streaming pass over the pixels; the
+    // 3x3 eigenproblem is then solved in closed form
+    public static PCAModel fit(Image image) {
+        ChannelCovariance covariance = ChannelCovariance.of(image);
+        SymmetricEigen3 eigen = new SymmetricEigen3(covariance.getCovariance());
+
+        RealMatrix basis = new Array2DRowRealMatrix(3, 3);
+        for (int i = 0; i < 3; i++) {
+            basis.setColumn(i, eigen.getVector(i));
+        }
+        return new PCAModel(covariance.getMeans(), basis);
+    }
+
+    public double[] getMeans() {
+        return means.clone();
+    }
+
+    public RealMatrix getBasis() {
+        return new Array2DRowRealMatrix(basis);
+    }
+
+    // All three component planes of image, centred on this model's means
+    public double[][] project(Image image) {
+        int n = image.width * image.height;
+        double[][] components = { new double[n], new double[n], new double[n] };
+        projectInto(image, components);
+        return components;
+    }
+
+    // A single component plane of image, for callers that need only one
+    public double[] project(Image image, int component) {
+        double[][] components = new double[3][];
+        components[component] = new double[image.width * image.height];
+        projectInto(image, components);
+        return components[component];
+    }
+
+    // Fills every non-null plane of components in one pass over the pixels
+    private void projectInto(Image image, double[][] components) {
+        int width = image.width;
+        Parallel.forBands(image.height, width, (start, end) -> {
+            int[] row = new int[width];
+            for (int y = start; y < end; y++) {
+                image.copyPixels(y * width, row, 0, width);
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    double r = ((pixel >> 16) & 0xFF) - means[0];
+                    double g = ((pixel >> 8) & 0xFF) - means[1];
+                    double b = (pixel & 0xFF) - means[2];
+                    for (int k = 0; k < 3; k++) {
+                        double[] plane = components[k];
+                        if (plane != null) {
+                            plane[offset + x] = r * basis[0][k] + g * basis[1][k] + b * basis[2][k];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // Image from component planes in this model's basis. A null plane counts
+    // as all zeros, so a single component can be reconstructed without
+    // allocating the others.
+    public Image reconstruct(double[][] components, int width, int height) {
+        double[] c0 = components[0];
+        double[] c1 = components[1];
+        double[] c2 = components[2];
+        int[] rgb = new int[width * height];
+
+        // The basis is orthogonal, so its transpose is its inverse
+        Parallel.forBands(height, width, (start, end) -> {
+            int[] channel = new int[3];
+            for (int index = start * width; index < end * width; index++) {
+                for (int j = 0; j < 3; j++) {
+                    double value = 0;
+                    if (c0 != null) {
+                        value += c0[index] * basis[j][0];
+                    }
+                    if (c1 != null) {
+                        value += c1[index] * basis[j][1];
+                    }
+                    if (c2 != null) {
+                        value += c2[index] * basis[j][2];
+                    }
+                    channel[j] = (int) Math.round(Math.max(0, Math.min(value + means[j], 255)));
+                }
+                rgb[index] = Image.pack(channel[0], channel[1], channel[2]);
+            }
+        });
+        return new Image(width, height, rgb);
+    }
+}
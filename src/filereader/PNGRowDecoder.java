@@ -0,0 +1,253 @@
+package filereader;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Decodes the rows of a PNG top to bottom in a single pass, as packed
+// 0xRRGGBB pixels with any alpha dropped, exactly as Image reads the
+// BufferedImage ImageIO would return.
+//
+// ImageIO's PNG reader has no forward-only row access: each region read
+// inflates the file again from the first row, so reading an image in strips
+// that way costs time quadratic in its height. Only the layouts this tool
+// writes and most files use are decoded here (non-interlaced, 8 bits per
+// sample, RGB, RGBA or palette, no ICC profile); open returns null for
+// anything else so the caller can fall back to ImageIO.
+final class PNGRowDecoder implements AutoCloseable {
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int IHDR = 0x49484452;
+    private static final int PLTE = 0x504C5445;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+    private static final int ICCP = 0x69434350;
+    // colour types
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int RGBA = 6;
+
+    final int width;
+    final int height;
+    private final int colorType;
+    private final int bytesPerPixel;
+    // palette entries as packed pixels; entries PLTE leaves out are black
+    private final int[] palette;
+    private final InputStream data;
+    // filter type byte followed by the row's samples
+    private byte[] current;
+    private byte[] previous;
+    private int nextRow;
+
+    private PNGRowDecoder(DataInputStream in, int width, int height, int colorType, int[] palette,
+            int firstIDATLength) {
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.bytesPerPixel = (colorType == RGB) ? 3 : (colorType == RGBA) ? 4 : 1;
+        this.palette = palette;
+        this.data = new InflaterInputStream(new IDATStream(in, firstIDATLength), new Inflater(), 1 << 16);
+        this.current = new byte[1 + width * bytesPerPixel];
+        this.previous = new byte[current.length];
+    }
+
+    // Decoder positioned at the first row of file, or null if file is not a
+    // PNG this class decodes
+    static PNGRowDecoder open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        PNGRowDecoder decoder = null;
+        try {
+            decoder = readHeader(in);
+            return decoder;
+        } finally {
+            if (decoder == null) {
+                in.close();
+            }
+        }
+    }
+
+    // Reads the chunks before the first IDAT
+    private static PNGRowDecoder readHeader(DataInputStream in) throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE) || in.readInt() != 13 || in.readInt() != IHDR) {
+            return null;
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        int bitDepth = in.readUnsignedByte();
+        int colorType = in.readUnsignedByte();
+        int compression = in.readUnsignedByte();
+        int filter = in.readUnsignedByte();
+        int interlace = in.readUnsignedByte();
+        in.readInt(); // CRC
+        if (bitDepth != 8 || (colorType != RGB && colorType != RGBA && colorType != PALETTE)
+                || compression != 0 || filter != 0 || interlace != 0 || width <= 0 || height <= 0) {
+            return null;
+        }
+        int[] palette = null;
+        while (true) {
+            int length = in.readInt();
+            int type = in.readInt();
+            if (type == IDAT) {
+                return (colorType == PALETTE && palette == null) ? null
+                        : new PNGRowDecoder(in, width, height, colorType, palette, length);
+            } else if (type == IEND || type == ICCP) { // no pixels, or possibly colour-managed by ImageIO
+                return null;
+            } else if (type == PLTE) {
+                palette = new int[256];
+                for (int i = 0; i < length / 3; i++) {
+                    int r = in.readUnsignedByte();
+                    int g = in.readUnsignedByte();
+                    int b = in.readUnsignedByte();
+                    if (i < palette.length) {
+                        palette[i] = (r << 16) | (g << 8) | b;
+                    }
+                }
+                skipFully(in, length % 3 + 4);
+            } else {
+                skipFully(in, length + 4L);
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                in.readByte(); // throws at end of file
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    // Index of the row readRow decodes next
+    int nextRow() {
+        return nextRow;
+    }
+
+    // Decodes the next row into pixels[offset, offset + width)
+    void readRow(int[] pixels, int offset) throws IOException {
+        if (nextRow >= height) {
+            throw new EOFException("all " + height + " rows read");
+        }
+        byte[] row = current;
+        for (int read = 0; read < row.length;) {
+            int n = data.read(row, read, row.length - read);
+            if (n < 0) {
+                throw new EOFException("image data ends at row " + nextRow);
+            }
+            read += n;
+        }
+        unfilter(row, previous, bytesPerPixel);
+        if (colorType == PALETTE) {
+            for (int x = 0; x < width; x++) {
+                pixels[offset + x] = palette[row[1 + x] & 0xFF];
+            }
+        } else {
+            for (int x = 0, i = 1; x < width; x++, i += bytesPerPixel) {
+                pixels[offset + x] = ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+            }
+        }
+        current = previous;
+        previous = row;
+        nextRow++;
+    }
+
+    // Undoes the row's filter in place; previous is the row above, already
+    // unfiltered (all zeros for the first row)
+    private static void unfilter(byte[] row, byte[] previous, int bpp) throws IOException {
+        int length = row.length;
+        switch (row[0]) {
+            case 0: // None
+                break;
+            case 1: // Sub
+                for (int i = 1 + bpp; i < length; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 1; i < length; i++) {
+                    row[i] += previous[i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 1; i < length; i++) {
+                    int left = (i > bpp) ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (left + (previous[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 1; i < length; i++) {
+                    int a = (i > bpp) ? row[i - bpp] & 0xFF : 0;
+                    int b = previous[i] & 0xFF;
+                    int c = (i > bpp) ? previous[i - bpp] & 0xFF : 0;
+                    int pa = Math.abs(b - c);
+                    int pb = Math.abs(a - c);
+                    int pc = Math.abs(a + b - 2 * c);
+                    row[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+                }
+                break;
+            default:
+                throw new IOException("unknown PNG filter type " + row[0]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    // The zlib stream split over consecutive IDAT chunks, read straight from
+    // the file (CRCs are not checked, as ImageIO does not)
+    private static final class IDATStream extends InputStream {
+        private final DataInputStream in;
+        // bytes left in the current IDAT chunk
+        private int remaining;
+        private boolean ended;
+
+        IDATStream(DataInputStream in, int firstLength) {
+            this.in = in;
+            this.remaining = firstLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (remaining == 0) {
+                if (ended) {
+                    return -1;
+                }
+                in.readInt(); // CRC of the previous chunk
+                remaining = in.readInt();
+                if (in.readInt() != IDAT) {
+                    ended = true;
+                    remaining = 0;
+                }
+            }
+            int n = in.read(buffer, offset, Math.min(length, remaining));
+            if (n < 0) {
+                throw new EOFException("PNG ends inside an IDAT chunk");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
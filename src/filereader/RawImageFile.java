@@ -0,0 +1,252 @@
+package filereader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Uncompressed raw image container (.sraw), an alternative to PNG for chained
+// operations where inflate/deflate dominates. Files are memory-mapped on read
+// and the returned Image reads its pixels straight from the mapping.
+//
+// Layout (all integers big-endian):
+//   offset  size  field
+//        0     8  magic "STEGRAW" followed by a zero byte
+//        8     4  format version (1)
+//       12     4  header length in bytes = offset of the first plane
+//                 (a multiple of 8)
+//       16     4  width
+//       20     4  height
+//       24     4  channel layout, LAYOUT_PACKED_RGB (1): a single plane of
+//                 width * height int32 pixels 0x00RRGGBB, row-major
+//       28     4  parameter block length in bytes
+//       32     n  parameters, UTF-8 "key=value" lines separated by '\n'
+//                 (free-form, e.g. the processor and threshold that made it)
+//   header ...    zero padding up to the header length, then the planes
+//
+// Since a file is one mapping, it can be at most 2 GB (about 500M pixels).
+public final class RawImageFile {
+    public static final String EXTENSION = ".sraw";
+    public static final int LAYOUT_PACKED_RGB = 1;
+
+    private static final byte[] MAGIC = { 'S', 'T', 'E', 'G', 'R', 'A', 'W', 0 };
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER = 32;
+
+    private RawImageFile() {
+    }
+
+    public static boolean isRaw(File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    // Map file and wrap its pixel plane in an Image without copying
+    public static Image read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Header header = readHeader(channel, file);
+            IntBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY, header.length, header.pixelBytes())
+                    .asIntBuffer();
+            return new Image(header.width, header.height, pixels);
+        }
+    }
+
+    // Map file read-write, so regions of its pixels can be rewritten in place
+    // without rewriting the rest of the file
+    public static Editor edit(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Header header = readHeader(channel, file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, header.length, header.pixelBytes());
+            IntBuffer pixels = buffer.asIntBuffer();
+            return new Editor(channel, buffer, new Image(header.width, header.height, pixels), pixels);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // A raw image file open for rewriting pixels in place. Writes go straight
+    // to the mapping, so image() sees them at once; only the pages written are
+    // flushed to disk on close.
+    public static final class Editor implements AutoCloseable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final Image image;
+        private final IntBuffer pixels;
+
+        private Editor(FileChannel channel, MappedByteBuffer buffer, Image image, IntBuffer pixels) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.image = image;
+            this.pixels = pixels;
+        }
+
+        // The file's current pixels, read from the mapping
+        public Image image() {
+            return image;
+        }
+
+        // Overwrite length pixels starting at row-major index from with
+        // src[offset, offset + length)
+        public void writePixels(int from, int[] src, int offset, int length) {
+            IntBuffer view = pixels.duplicate();
+            view.position(from);
+            view.put(src, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                buffer.force();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Read only the parameter block of file
+    public static Map<String, String> readParameters(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readHeader(channel, file).parameters;
+        }
+    }
+
+    // Write image's RGB pixels to file, replacing it if present. The pixels
+    // go to a temporary file in the same folder that is then renamed over
+    // file, so Images still mapping the old file (including image itself)
+    // keep reading its contents rather than a truncated or rewritten one.
+    public static void write(Image image, Map<String, String> parameters, File file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            text.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        byte[] params = text.toString().getBytes(StandardCharsets.UTF_8);
+        int headerLength = (FIXED_HEADER + params.length + 7) & ~7;
+        long size = headerLength + 4L * image.width * image.height;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Raw images are limited to 2 GB (one mapping): " + file);
+        }
+
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        // named for this process and thread so concurrent writers never share
+        // one, and created as a plain file so it gets the usual permissions
+        Path temporary = target.resolveSibling("." + file.getName() + "." + ProcessHandle.current().pid() + "."
+                + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.put(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(headerLength);
+                buffer.putInt(image.width);
+                buffer.putInt(image.height);
+                buffer.putInt(LAYOUT_PACKED_RGB);
+                buffer.putInt(params.length);
+                buffer.put(params);
+                buffer.position(headerLength);
+                IntBuffer pixels = buffer.slice().asIntBuffer();
+                // one row at a time so wrapped or lazily converted images are not copied whole
+                int[] row = new int[image.width];
+                for (int y = 0; y < image.height; y++) {
+                    image.copyPixels(y * image.width, row, 0, image.width);
+                    pixels.put(row);
+                }
+                buffer.force();
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static final class Header {
+        int length;
+        int width;
+        int height;
+        Map<String, String> parameters = new LinkedHashMap<>();
+
+        long pixelBytes() {
+            return 4L * width * height;
+        }
+    }
+
+    // Read and check the header of file from the start of channel. Every
+    // length is checked against the fixed header and the file size before
+    // anything is allocated or mapped, so a truncated or foreign file fails
+    // here rather than in the mapping.
+    private static Header readHeader(FileChannel channel, File file) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_HEADER);
+        if (fileSize < FIXED_HEADER || !readFully(channel, buffer, 0)) {
+            throw new IOException("Not a raw image: " + file);
+        }
+        buffer.flip();
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a raw image: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported raw image version " + version + ": " + file);
+        }
+        Header header = new Header();
+        header.length = buffer.getInt();
+        header.width = buffer.getInt();
+        header.height = buffer.getInt();
+        int layout = buffer.getInt();
+        if (layout != LAYOUT_PACKED_RGB) {
+            throw new IOException("Unsupported raw channel layout " + layout + ": " + file);
+        }
+        int paramsLength = buffer.getInt();
+        if (paramsLength < 0 || header.length % 8 != 0 || header.length < FIXED_HEADER + (long) paramsLength) {
+            throw new IOException("Not a raw image: header length " + header.length + " does not hold the "
+                    + FIXED_HEADER + "-byte header and " + paramsLength + " parameter bytes: " + file);
+        }
+        if (header.width <= 0 || header.height <= 0) {
+            throw new IOException("Not a raw image: size " + header.width + "x" + header.height + ": " + file);
+        }
+        if (header.pixelBytes() > Integer.MAX_VALUE) {
+            throw new IOException("Raw images are limited to 2 GB (one mapping): " + file);
+        }
+        if (fileSize < header.length + header.pixelBytes()) {
+            throw new IOException("Truncated raw image: " + fileSize + " bytes, header and " + header.width + "x"
+                    + header.height + " pixels need " + (header.length + header.pixelBytes()) + ": " + file);
+        }
+        ByteBuffer params = ByteBuffer.allocate(paramsLength);
+        if (!readFully(channel, params, FIXED_HEADER)) {
+            throw new IOException("Truncated raw image: " + file);
+        }
+        for (String line : new String(params.array(), StandardCharsets.UTF_8).split("\n")) {
+            int split = line.indexOf('=');
+            if (split > 0) {
+                header.parameters.put(line.substring(0, split), line.substring(split + 1));
+            }
+        }
+        return header;
+    }
+
+    // Fill buffer from channel starting at position; false at end of file
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+}
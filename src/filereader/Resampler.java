@@ -0,0 +1,182 @@
+package filereader;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import util.Parallel;
+
+// Separable two-pass image resampler.
+//
+// Each axis is described by a table of (first source index, weights) per
+// output position, built once per (filter, source size, output size) and
+// cached, so nothing is recomputed inside the pixel loops. Each output row is
+// made by blending the source rows it covers into a row buffer (vertical
+// pass), then blending along that buffer (horizontal pass).
+public final class Resampler {
+    public enum Filter {
+        // Interpolates between the two nearest source pixels, with the corners
+        // of the source and output images aligned. Same mapping Image.scale has
+        // always used.
+        BILINEAR,
+        // Averages every source pixel the output pixel covers, weighted by
+        // coverage. Avoids the aliasing bilinear gives on large downscales.
+        AREA
+    }
+
+    // Output position -> source pixels and weights along one axis
+    private static final class Axis {
+        final int[] first;
+        final double[][] weights;
+
+        Axis(int size) {
+            first = new int[size];
+            weights = new double[size][];
+        }
+    }
+
+    // Axis tables are tiny; drop them all if many different sizes show up
+    private static final int MAX_CACHED_AXES = 64;
+    private static final Map<String, Axis> AXES = new ConcurrentHashMap<>();
+
+    private Resampler() {
+    }
+
+    // Resample image to newWidth x newHeight with the given filter. Only the
+    // RGB pixels are touched; Lab stays lazy on the result.
+    public static Image resample(Image image, int newWidth, int newHeight, Filter filter) {
+        Axis columns = axis(filter, image.width, newWidth);
+        Axis rows = axis(filter, image.height, newHeight);
+        int[] src = image.getPixels();
+        int[] scaled = new int[newWidth * newHeight];
+
+        Parallel.forBands(newHeight, newWidth, (start, end) -> resampleRows(src, image.width, 0,
+                columns, rows, newWidth, start, end, scaled, 0));
+        return new Image(newWidth, newHeight, scaled);
+    }
+
+    // Source rows [first, end) needed to produce output rows [startRow, endRow)
+    // when resampling an image of srcHeight rows to newHeight rows
+    public static int[] sourceRows(Filter filter, int srcHeight, int newHeight, int startRow, int endRow) {
+        Axis rows = axis(filter, srcHeight, newHeight);
+        int first = rows.first[startRow];
+        int end = first;
+        for (int y = startRow; y < endRow; y++) {
+            first = Math.min(first, rows.first[y]);
+            end = Math.max(end, rows.first[y] + rows.weights[y].length);
+        }
+        return new int[] { first, end };
+    }
+
+    // Output rows [startRow, endRow) of resampling a srcWidth x srcHeight image
+    // to newWidth x newHeight, given only a band of that image whose first row
+    // is source row bandY. The band must hold the rows given by sourceRows.
+    public static Image resampleBand(Image band, int bandY, int srcHeight, int newWidth, int newHeight,
+            int startRow, int endRow, Filter filter) {
+        Axis columns = axis(filter, band.width, newWidth);
+        Axis rows = axis(filter, srcHeight, newHeight);
+        int[] src = band.getPixels();
+        int[] scaled = new int[newWidth * (endRow - startRow)];
+
+        Parallel.forBands(endRow - startRow, newWidth, (start, end) -> resampleRows(src, band.width, bandY,
+                columns, rows, newWidth, startRow + start, startRow + end, scaled, startRow));
+        return new Image(newWidth, endRow - startRow, scaled);
+    }
+
+    // Fill output rows [start, end) into out (whose first row is output row
+    // outY) from src (whose first row is source row srcY)
+    private static void resampleRows(int[] src, int width, int srcY, Axis columns, Axis rows,
+            int newWidth, int start, int end, int[] out, int outY) {
+        // vertical pass output: one blended source row, R, G, B interleaved
+        double[] row = new double[3 * width];
+        for (int ny = start; ny < end; ny++) {
+            Arrays.fill(row, 0);
+            int firstY = rows.first[ny] - srcY;
+            double[] weightsY = rows.weights[ny];
+            for (int k = 0; k < weightsY.length; k++) {
+                double weight = weightsY[k];
+                int offset = (firstY + k) * width;
+                for (int x = 0, i = 0; x < width; x++, i += 3) {
+                    int pixel = src[offset + x];
+                    row[i] += weight * ((pixel >> 16) & 0xFF);
+                    row[i + 1] += weight * ((pixel >> 8) & 0xFF);
+                    row[i + 2] += weight * (pixel & 0xFF);
+                }
+            }
+            // horizontal pass
+            int offset = (ny - outY) * newWidth;
+            for (int nx = 0; nx < newWidth; nx++) {
+                int i = 3 * columns.first[nx];
+                double[] weightsX = columns.weights[nx];
+                double red = 0;
+                double green = 0;
+                double blue = 0;
+                for (int k = 0; k < weightsX.length; k++, i += 3) {
+                    double weight = weightsX[k];
+                    red += weight * row[i];
+                    green += weight * row[i + 1];
+                    blue += weight * row[i + 2];
+                }
+                out[offset + nx] = (clamp(red) << 16) | (clamp(green) << 8) | clamp(blue);
+            }
+        }
+    }
+
+    // Round and clamp a value to the valid [0,255] range.
+    private static int clamp(double value) {
+        return (int) Math.round(Math.max(0, Math.min(255, value)));
+    }
+
+    private static Axis axis(Filter filter, int srcSize, int dstSize) {
+        String key = filter + ":" + srcSize + ":" + dstSize;
+        Axis axis = AXES.get(key);
+        if (axis == null) {
+            axis = (filter == Filter.AREA) ? areaAxis(srcSize, dstSize) : bilinearAxis(srcSize, dstSize);
+            if (AXES.size() >= MAX_CACHED_AXES) {
+                AXES.clear();
+            }
+            AXES.put(key, axis);
+        }
+        return axis;
+    }
+
+    private static Axis bilinearAxis(int srcSize, int dstSize) {
+        Axis axis = new Axis(dstSize);
+        // When dstSize is 1, avoid division by zero.
+        double scale = (dstSize > 1) ? (double) (srcSize - 1) / (dstSize - 1) : 0;
+        for (int i = 0; i < dstSize; i++) {
+            double pos = (dstSize > 1) ? i * scale : 0;
+            int p1 = (int) Math.floor(pos);
+            int p2 = Math.min(p1 + 1, srcSize - 1);
+            double d = pos - p1;
+            axis.first[i] = p1;
+            axis.weights[i] = (p2 == p1) ? new double[] { (1 - d) + d } : new double[] { 1 - d, d };
+        }
+        return axis;
+    }
+
+    private static Axis areaAxis(int srcSize, int dstSize) {
+        Axis axis = new Axis(dstSize);
+        double scale = (double) srcSize / dstSize;
+        for (int i = 0; i < dstSize; i++) {
+            // output pixel i covers source interval [lo, hi)
+            double lo = i * scale;
+            double hi = Math.min((i + 1) * scale, srcSize);
+            int first = (int) Math.floor(lo);
+            int last = Math.max(first, Math.min((int) Math.ceil(hi) - 1, srcSize - 1));
+            double[] weights = new double[last - first + 1];
+            double total = 0;
+            for (int k = first; k <= last; k++) {
+                double coverage = Math.min(hi, k + 1) - Math.max(lo, k);
+                weights[k - first] = coverage;
+                total += coverage;
+            }
+            for (int k = 0; k < weights.length; k++) {
+                weights[k] /= total;
+            }
+            axis.first[i] = first;
+            axis.weights[i] = weights;
+        }
+        return axis;
+    }
+}
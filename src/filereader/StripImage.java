@@ -0,0 +1,179 @@
+package filereader;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+// A TYPE_INT_RGB style RenderedImage whose pixels are produced one horizontal
+// strip at a time by a FileReader.StripSource. Image writers pull rows from it
+// in order, so only the current strip is ever held in memory.
+class StripImage implements RenderedImage {
+    private static final int[] MASKS = { 0xFF0000, 0x00FF00, 0x0000FF };
+
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+    private final FileReader.StripSource source;
+    private final ColorModel colorModel = new DirectColorModel(24, MASKS[0], MASKS[1], MASKS[2]);
+
+    // Most recently produced strip and the row it starts at
+    private Raster strip;
+    private int stripY = -1;
+
+    StripImage(int width, int height, int stripHeight, FileReader.StripSource source) {
+        this.width = width;
+        this.height = height;
+        this.stripHeight = stripHeight;
+        this.source = source;
+    }
+
+    // Raster for the strip (tile row) starting at y, produced on demand
+    private synchronized Raster strip(int y) {
+        if (y != stripY) {
+            int rows = Math.min(stripHeight, height - y);
+            Image pixels = source.strip(y, rows);
+            DataBufferInt buffer = new DataBufferInt(pixels.getPixels(), width * rows);
+            strip = Raster.createPackedRaster(buffer, width, rows, width, MASKS, new Point(0, y));
+            stripY = y;
+        }
+        return strip;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        return strip(tileY * stripHeight);
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        Rectangle bounds = rect.intersection(new Rectangle(0, 0, width, height));
+        int firstStrip = bounds.y / stripHeight;
+        int lastStrip = (bounds.y + bounds.height - 1) / stripHeight;
+        if (firstStrip == lastStrip) {
+            // the usual case: rows from one strip, shared without copying
+            return strip(firstStrip * stripHeight).createChild(bounds.x, bounds.y, bounds.width,
+                    bounds.height, bounds.x, bounds.y, null);
+        }
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(bounds.width, bounds.height)
+                .createWritableTranslatedChild(bounds.x, bounds.y);
+        copyInto(raster, bounds);
+        return raster;
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            raster = colorModel.createCompatibleWritableRaster(width, height);
+        }
+        copyInto(raster, raster.getBounds().intersection(new Rectangle(0, 0, width, height)));
+        return raster;
+    }
+
+    private void copyInto(WritableRaster raster, Rectangle bounds) {
+        for (int y = bounds.y - bounds.y % stripHeight; y < bounds.y + bounds.height; y += stripHeight) {
+            Raster tile = strip(y);
+            Rectangle overlap = tile.getBounds().intersection(bounds);
+            raster.setDataElements(overlap.x, overlap.y, tile.createChild(overlap.x, overlap.y,
+                    overlap.width, overlap.height, overlap.x, overlap.y, null));
+        }
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return java.awt.Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, stripHeight, MASKS);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (height + stripHeight - 1) / stripHeight;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return stripHeight;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
@@ -0,0 +1,144 @@
+package filereader;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+// Reads an image file in full-width bands of rows without decoding it whole,
+// for images too large to hold in memory (see FileReader.openImage).
+//
+// Bands are cheapest read top to bottom. PNGs that PNGRowDecoder handles are
+// then decoded in one forward pass: each row is inflated once, and rows the
+// previous band shares with the next are reused, so a whole image costs one
+// decode whatever the band height. Other files, and bands that start above
+// the previous one, are read through ImageIO source regions; formats without
+// random access (PNG, JPEG) inflate everything above a band again on every
+// read, so reading a whole image that way costs about height / band height
+// decodes of half the image.
+public final class StripReader implements AutoCloseable {
+    private final File file;
+    private final int width;
+    private final int height;
+    // single-pass decoder, or null if every band goes through ImageIO
+    private final PNGRowDecoder decoder;
+    // opened on the first band the decoder cannot supply
+    private ImageReader regionReader;
+    // copy of the last band that ended at the decoder's next row
+    private int[] band = new int[0];
+    private int bandStart;
+    private int bandRows;
+
+    private StripReader(File file, int width, int height, PNGRowDecoder decoder, ImageReader regionReader) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.decoder = decoder;
+        this.regionReader = regionReader;
+    }
+
+    // Opens file, reading its header only
+    static StripReader open(File file) throws IOException {
+        PNGRowDecoder decoder = PNGRowDecoder.open(file);
+        if (decoder != null) {
+            return new StripReader(file, decoder.width, decoder.height, decoder, null);
+        }
+        ImageReader reader = openImageReader(file);
+        try {
+            return new StripReader(file, reader.getWidth(0), reader.getHeight(0), null, reader);
+        } catch (IOException | RuntimeException e) {
+            closeImageReader(reader);
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Rows [y, y + rows) as an image of their own
+    public Image read(int y, int rows) throws IOException {
+        if (y < 0 || rows < 1 || y + rows > height) {
+            throw new IllegalArgumentException("rows " + y + " to " + (y + rows) + " of " + height);
+        }
+        if (decoder == null || y < bandStart) {
+            return readRegion(y, rows);
+        }
+        int[] pixels = new int[width * rows];
+        // rows still held from the last band
+        int from = y;
+        if (y < bandStart + bandRows) {
+            int count = Math.min(rows, bandStart + bandRows - y);
+            System.arraycopy(band, (y - bandStart) * width, pixels, 0, count * width);
+            from += count;
+        }
+        // rows between the last band and this one are decoded and dropped
+        int[] skipped = (decoder.nextRow() < from) ? new int[width] : null;
+        while (decoder.nextRow() < from) {
+            decoder.readRow(skipped, 0);
+        }
+        for (int row = Math.max(from, decoder.nextRow()); row < y + rows; row++) {
+            decoder.readRow(pixels, (row - y) * width);
+        }
+        // kept if it reaches the decoder (one wholly inside the last band
+        // leaves that band in place); a copy, since callers may write into
+        // the strip they are given
+        if (y + rows == decoder.nextRow()) {
+            band = pixels.clone();
+            bandStart = y;
+            bandRows = rows;
+        }
+        return new Image(width, rows, pixels);
+    }
+
+    private Image readRegion(int y, int rows) throws IOException {
+        if (regionReader == null) {
+            regionReader = openImageReader(file);
+        }
+        ImageReadParam param = regionReader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, y, width, rows));
+        return new Image(regionReader.read(0, param));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (regionReader != null) {
+            closeImageReader(regionReader);
+        }
+        if (decoder != null) {
+            decoder.close();
+        }
+    }
+
+    private static ImageReader openImageReader(File file) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(file);
+        if (stream == null) {
+            throw new IOException("cannot open " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new IOException("no reader for " + file.getName());
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, true, true);
+        return reader;
+    }
+
+    private static void closeImageReader(ImageReader reader) throws IOException {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream) {
+            ((ImageInputStream) input).close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package processors;
+
+import util.Parallel;
+
+// 2D FFT of a real plane that keeps only the non-redundant half of its spectrum.
+//
+// The spectrum of a real h x w plane is Hermitian, F(y, x) = conj(F(-y, -x)),
+// so columns 0..w/2 hold all of it. Rows go through a real FFT, then only
+// those w/2 + 1 columns go through a complex FFT: about half the work and
+// memory of a complex 2D transform, and the inverse is real by construction.
+//
+// Spectra are A[h] of rows 2 * (w/2 + 1) long with bin (y, x) at [y][2x]
+// (real) and [y][2x + 1] (imaginary), the layout complexForward uses for its
+// left half. Works for any size; JTransforms' own 2D realForward needs powers
+// of two.
+//
+// The packing and transform order live here once; HalfSpectrumFFT (double[]
+// rows) and FloatHalfSpectrumFFT (float[] rows) supply only the primitive
+// array accessors and JTransforms' 1D plans of their precision. Planes are
+// double[] on both ends whatever the precision.
+abstract class AbstractHalfSpectrumFFT<A> implements FFTPlanCache.Plan {
+    final int width;
+    final int height;
+    // Stored spectrum columns, w/2 + 1
+    final int columns;
+
+    AbstractHalfSpectrumFFT(int height, int width) {
+        this.width = width;
+        this.height = height;
+        this.columns = width / 2 + 1;
+    }
+
+    // count arrays of length elements, as a spectrum or a set of columns
+    abstract A[] newArrays(int count, int length);
+
+    abstract A newArray(int length);
+
+    abstract double get(A array, int index);
+
+    abstract void set(A array, int index, double value);
+
+    // Copy width values of plane from offset into the start of row
+    abstract void load(double[] plane, int offset, A row);
+
+    // Copy the first width values of row into plane at offset
+    abstract void store(A row, double[] plane, int offset);
+
+    // JTransforms' in-place realForward / realInverse (scaled) along a row
+    abstract void realForward(A row);
+
+    abstract void realInverse(A row);
+
+    // JTransforms' in-place complexForward / complexInverse (scaled) along a column
+    abstract void complexForward(A column);
+
+    abstract void complexInverse(A column);
+
+    // Approximate size of the precomputed double-precision tables for
+    // height x width planes
+    static long planBytes(int height, int width) {
+        return (height == width) ? tableBytes(width) : tableBytes(width) + tableBytes(height);
+    }
+
+    // JTransforms uses split-radix for powers of two, mixed-radix when only a
+    // small factor is left after removing 2, 3 and 5, and Bluestein otherwise
+    private static long tableBytes(int n) {
+        if (Integer.bitCount(n) == 1) {
+            return 8L * n;
+        }
+        int rest = n;
+        for (int factor : new int[] { 2, 3, 5 }) {
+            while (rest % factor == 0) {
+                rest /= factor;
+            }
+        }
+        if (rest < 211) {
+            return 8L * 6 * n;
+        }
+        long padded = Integer.highestOneBit(2 * n - 1) << 1;
+        return 8L * (2 * n + 3 * padded);
+    }
+
+    // Half spectrum of a row-major width x height plane; plane is not modified
+    A[] forward(double[] plane) {
+        A[] spectrum = newArrays(height, 2 * columns);
+        Parallel.forBands(height, width, (start, end) -> {
+            for (int y = start; y < end; y++) {
+                forwardRow(plane, y, spectrum[y]);
+            }
+        });
+        transformColumns(spectrum, true);
+        return spectrum;
+    }
+
+    // Row y of plane through the real FFT, unpacked into row
+    private void forwardRow(double[] plane, int y, A row) {
+        load(plane, y * width, row);
+        realForward(row);
+        // realForward packs the last stored bin's lone component into
+        // row[1] (Re(w/2) for even w, Im((w-1)/2) for odd w); both
+        // belong at index w in the unpacked layout
+        set(row, width, get(row, 1));
+        set(row, 1, 0);
+        if (width % 2 == 0) {
+            set(row, width + 1, 0);
+        }
+    }
+
+    // Fully transformed spectrum columns first, first + step, ... (count of
+    // them) of a row-major width x height plane, as complex columns:
+    // columns[k][2y] and columns[k][2y + 1] hold bin (y, first + k * step).
+    // Every row still needs its FFT, but only these columns get theirs, and
+    // only they are kept, so reading a band of the spectrum costs less time
+    // and far less memory than forward. plane is not modified.
+    A[] forwardColumns(double[] plane, int first, int step, int count) {
+        A[] columns = newArrays(count, 2 * height);
+        Parallel.forBands(height, width, (start, end) -> {
+            A row = newArray(2 * this.columns);
+            for (int y = start; y < end; y++) {
+                forwardRow(plane, y, row);
+                for (int k = 0, x = first; k < count; k++, x += step) {
+                    set(columns[k], 2 * y, get(row, 2 * x));
+                    set(columns[k], 2 * y + 1, get(row, 2 * x + 1));
+                }
+            }
+        });
+        Parallel.forBands(count, height, (start, end) -> {
+            for (int k = start; k < end; k++) {
+                complexForward(columns[k]);
+            }
+        });
+        return columns;
+    }
+
+    // Row-major width x height plane for a half spectrum; spectrum is overwritten
+    double[] inverse(A[] spectrum) {
+        transformColumns(spectrum, false);
+        double[] plane = new double[width * height];
+        Parallel.forBands(height, width, (start, end) -> {
+            for (int y = start; y < end; y++) {
+                A row = spectrum[y];
+                set(row, 1, get(row, width));
+                realInverse(row);
+                store(row, plane, y * width);
+            }
+        });
+        return plane;
+    }
+
+    // Columns 0 and (for even widths) w/2 are their own mirror image, so after
+    // writing into them, conjugate pairs within the column have to be made to
+    // agree again. Rows above the middle win, as with a full symmetry pass.
+    void enforceSelfMirroredColumns(A[] spectrum) {
+        enforceColumnSymmetry(spectrum, 0);
+        if (width % 2 == 0) {
+            enforceColumnSymmetry(spectrum, width / 2);
+        }
+    }
+
+    private void enforceColumnSymmetry(A[] spectrum, int x) {
+        for (int y = 1; y < height - y; y++) {
+            set(spectrum[height - y], 2 * x, get(spectrum[y], 2 * x));
+            set(spectrum[height - y], 2 * x + 1, -get(spectrum[y], 2 * x + 1));
+        }
+        // self-conjugate bins are real
+        set(spectrum[0], 2 * x + 1, 0);
+        if (height % 2 == 0) {
+            set(spectrum[height / 2], 2 * x + 1, 0);
+        }
+    }
+
+    // Complex FFT down every stored column, in place
+    private void transformColumns(A[] spectrum, boolean forward) {
+        Parallel.forBands(columns, height, (start, end) -> {
+            A column = newArray(2 * height);
+            for (int x = start; x < end; x++) {
+                for (int y = 0; y < height; y++) {
+                    set(column, 2 * y, get(spectrum[y], 2 * x));
+                    set(column, 2 * y + 1, get(spectrum[y], 2 * x + 1));
+                }
+                if (forward) {
+                    complexForward(column);
+                } else {
+                    complexInverse(column);
+                }
+                for (int y = 0; y < height; y++) {
+                    set(spectrum[y], 2 * x, get(column, 2 * y));
+                    set(spectrum[y], 2 * x + 1, get(column, 2 * y + 1));
+                }
+            }
+        });
+    }
+}
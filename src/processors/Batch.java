@@ -0,0 +1,370 @@
+package processors;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cli.ParsedCommand.ProcessorType;
+import filereader.AsyncImageWriter;
+import filereader.FileReader;
+import filereader.Image;
+
+/**
+ * Runs many encode/decode jobs on a bounded pool of worker threads,
+ * reporting each job's result as it finishes and a throughput summary
+ * at the end.
+ * <p>
+ * Jobs come from a CSV manifest, one job per line:
+ * <pre>
+ * # processor,source,payload,output[,key=value;key=value...]
+ * lsb,in/a.png,payloads/a.png,out/a.png,threshold=3
+ * lsb,encoded/b.png,,decoded/b.png
+ * </pre>
+ * An empty payload makes the job a decode. Jobs run concurrently, so a job
+ * must not read another job's output from the same batch. Relative paths are resolved
+ * against the manifest's folder. Blank lines and lines starting with
+ * {@code #} are skipped. The parameters are {@code threshold}, for
+ * {@code lsb} jobs, and {@code debug=true}, for {@code pca} encode jobs,
+ * which writes the per-component debug images to a folder named after the
+ * output plus {@code -pca}. A job given any other parameter, or one of
+ * these on a job it does not apply to, fails. Outputs ending in
+ * {@code .sraw} are written as raw image files, anything else as PNG.
+ * <p>
+ * Results are written by a background writer while workers start on the
+ * next job. At most one finished result per worker waits to be written;
+ * a worker that finishes while the writer is full waits for it.
+ * <p>
+ * Alternatively, jobs can be made from a directory pair: every file in
+ * the source folder with a same-named file in the payload folder is
+ * encoded into a same-named output.
+ */
+public class Batch {
+  /** A single encode or decode job. */
+  public static class Job {
+    /** processor to run the job with */
+    private final ProcessorType processor;
+    /** image to encode into, or to decode */
+    private final File source;
+    /** image to encode, {@code null} if decoding */
+    private final File payload;
+    /** file to write the result to */
+    private final File output;
+    /** processor parameters for this job only */
+    private final Map<String, String> parameters;
+
+    /**
+     * Constructs a new {@code Job}.
+     * @param processor Processor to run the job with.
+     * @param source Image to encode into, or to decode.
+     * @param payload Image to encode, {@code null} to decode {@code source}.
+     * @param output File to write the result to.
+     * @param parameters Processor parameters for this job only.
+     */
+    public Job(ProcessorType processor, File source, File payload, File output,
+        Map<String, String> parameters) {
+      this.processor = processor;
+      this.source = source;
+      this.payload = payload;
+      this.output = output;
+      this.parameters = parameters;
+    }
+
+    /**
+     * Get whether this job encodes.
+     * @return {@code true} if encoding, {@code false} if decoding.
+     */
+    public boolean isEncode() {
+      return payload != null;
+    }
+
+    /**
+     * Runs this job on the calling thread, queuing its result on
+     * {@code writer}.
+     * @param writer Writer for the result.
+     * @return Number of pixels processed.
+     * @throws IllegalStateException if an image cannot be read.
+     * @throws IllegalArgumentException if a parameter is not supported.
+     * @throws InterruptedException if interrupted while the writer is full.
+     */
+    private long run(AsyncImageWriter writer) throws InterruptedException {
+      Integer threshold = null;
+      boolean debug = false;
+      for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+        if (parameter.getKey().equals("threshold") && processor == ProcessorType.kLSB) {
+          threshold = Integer.parseInt(parameter.getValue());
+        } else if (parameter.getKey().equals("debug") && processor == ProcessorType.kPCA && isEncode()) {
+          debug = parseFlag(parameter.getKey(), parameter.getValue());
+        } else if (parameter.getKey().equals("debug") && processor == ProcessorType.kPCA) {
+          throw new IllegalArgumentException("debug applies to encode jobs only; pca decode writes no debug images");
+        } else {
+          throw new IllegalArgumentException("unsupported parameter " + parameter.getKey());
+        }
+      }
+      ImageProcessor instance = processor.toInstance();
+      Image image = read(source);
+      Image result;
+      if (isEncode()) {
+        Image encode = read(payload);
+        if (threshold != null) {
+          result = LSBStego.instance().encode(image, encode, threshold);
+        } else if (processor == ProcessorType.kPCA) {
+          result = PCAStego.instance().encode(image, encode, debug ? debugFolder() : null);
+        } else {
+          result = instance.encode(image, encode);
+        }
+      } else {
+        result = (threshold != null) ? LSBStego.instance().decode(image, threshold)
+            : instance.decode(image);
+      }
+      writer.write(result, output);
+      return (long) image.width * image.height;
+    }
+
+    /**
+     * Value of a {@code true}/{@code false} parameter, so a misspelt value
+     * fails the job rather than reading as {@code false}.
+     * @throws IllegalArgumentException if the value is neither.
+     */
+    private static boolean parseFlag(String key, String value) {
+      if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+        return Boolean.parseBoolean(value);
+      }
+      throw new IllegalArgumentException(key + " must be true or false, not " + value);
+    }
+
+    /** Folder for this job's debug images, named after its output. */
+    private File debugFolder() {
+      String name = output.getName();
+      int dot = name.lastIndexOf('.');
+      return new File(output.getParentFile(), ((dot > 0) ? name.substring(0, dot) : name) + "-pca");
+    }
+
+    private static Image read(File file) {
+      Image image = FileReader.readImage(file);
+      if (image == null) {
+        throw new IllegalStateException("could not read " + file);
+      }
+      return image;
+    }
+
+    @Override
+    public String toString() {
+      return (isEncode() ? "encode " : "decode ") + source.getName() + " -> " + output.getName();
+    }
+  }
+
+  /** Totals for a finished batch. */
+  public static class Summary {
+    /** jobs that finished successfully */
+    public final int succeeded;
+    /** jobs that failed */
+    public final int failed;
+    /** pixels processed by successful jobs */
+    public final long pixels;
+    /** wall time for the whole batch */
+    public final long nanos;
+
+    private Summary(int succeeded, int failed, long pixels, long nanos) {
+      this.succeeded = succeeded;
+      this.failed = failed;
+      this.pixels = pixels;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public String toString() {
+      double seconds = nanos / 1e9;
+      return String.format("Batch finished: %d succeeded, %d failed in %.2f s "
+          + "(%.2f jobs/s, %.2f megapixels/s)", succeeded, failed, seconds,
+          (succeeded + failed) / seconds, pixels / 1e6 / seconds);
+    }
+  }
+
+  /**
+   * Runs a batch command from the CLI: either
+   * {@code batch <manifest> [workers]} or
+   * {@code batch <processor> <sourceDir> <payloadDir> <outputDir> [workers]}.
+   * @param tokens Command tokens, starting with {@code batch}.
+   * @throws IllegalArgumentException if the tokens match neither form.
+   */
+  public static void execute(String[] tokens) throws IllegalArgumentException {
+    List<Job> jobs;
+    int workers = Runtime.getRuntime().availableProcessors();
+    try {
+      if (tokens.length == 2 || tokens.length == 3) {
+        jobs = readManifest(FileReader.getFile(tokens[1]));
+        if (tokens.length == 3) {
+          workers = Integer.parseInt(tokens[2]);
+        }
+      } else if (tokens.length == 5 || tokens.length == 6) {
+        jobs = pairDirectories(processorType(tokens[1]), FileReader.getFile(tokens[2]),
+            FileReader.getFile(tokens[3]), FileReader.getFile(tokens[4]));
+        if (tokens.length == 6) {
+          workers = Integer.parseInt(tokens[5]);
+        }
+      } else {
+        throw new IllegalArgumentException();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+    if (workers < 1) {
+      throw new IllegalArgumentException();
+    }
+    System.out.println(run(jobs, workers));
+    if (FFTPlanCache.hits() + FFTPlanCache.misses() > 0) {
+      System.out.println(FFTPlanCache.stats());
+    }
+  }
+
+  /**
+   * Reads jobs from a CSV manifest (see class description).
+   * @param manifest Manifest file.
+   * @return Jobs in manifest order.
+   * @throws IOException if the manifest cannot be read.
+   * @throws IllegalArgumentException if a line is malformed.
+   */
+  public static List<Job> readManifest(File manifest) throws IOException {
+    File base = manifest.getAbsoluteFile().getParentFile();
+    List<Job> jobs = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      int number = 0;
+      while ((line = reader.readLine()) != null) {
+        number++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split(",", -1);
+        if (fields.length < 4 || fields.length > 5 || fields[1].isBlank() || fields[3].isBlank()) {
+          throw new IllegalArgumentException("manifest line " + number + ": expected "
+              + "processor,source,payload,output[,parameters]");
+        }
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (fields.length == 5 && !fields[4].isBlank()) {
+          for (String parameter : fields[4].split(";")) {
+            String[] pair = parameter.split("=", 2);
+            if (pair.length != 2) {
+              throw new IllegalArgumentException("manifest line " + number + ": bad parameter " + parameter);
+            }
+            parameters.put(pair[0].trim(), pair[1].trim());
+          }
+        }
+        jobs.add(new Job(processorType(fields[0].trim()), resolve(base, fields[1]),
+            fields[2].isBlank() ? null : resolve(base, fields[2]), resolve(base, fields[3]), parameters));
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Makes an encode job for every file in {@code sourceDir} that has a
+   * file of the same name in {@code payloadDir}.
+   * @param processor Processor for every job.
+   * @param sourceDir Folder of images to encode into.
+   * @param payloadDir Folder of images to encode.
+   * @param outputDir Folder to write same-named results to.
+   * @return Jobs, sorted by file name.
+   * @throws IOException if a folder cannot be listed.
+   */
+  public static List<Job> pairDirectories(ProcessorType processor, File sourceDir, File payloadDir,
+      File outputDir) throws IOException {
+    File[] sources = sourceDir.listFiles(File::isFile);
+    if (sources == null) {
+      throw new IOException("not a folder: " + sourceDir);
+    }
+    Arrays.sort(sources);
+    List<Job> jobs = new ArrayList<>();
+    for (File source : sources) {
+      File payload = new File(payloadDir, source.getName());
+      if (payload.isFile()) {
+        jobs.add(new Job(processor, source, payload, new File(outputDir, source.getName()),
+            new LinkedHashMap<>()));
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Runs jobs on {@code workers} threads, printing one line per job as it
+   * finishes, then waits for every result to be written. A failed job does
+   * not stop the others; a job whose result cannot be written counts as
+   * failed.
+   * @param jobs Jobs to run.
+   * @param workers Number of worker threads.
+   * @return Totals for the batch.
+   */
+  public static Summary run(List<Job> jobs, int workers) {
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    ExecutorCompletionService<Long> completion = new ExecutorCompletionService<>(pool);
+    AsyncImageWriter writer = new AsyncImageWriter(1, workers);
+    Map<Future<Long>, Job> submitted = new LinkedHashMap<>();
+    for (Job job : jobs) {
+      submitted.put(completion.submit(() -> job.run(writer)), job);
+    }
+    int succeeded = 0;
+    int failed = 0;
+    long pixels = 0;
+    // pixels of each job whose result is queued, by output file, so a
+    // failed write can take them back out of the total
+    Map<File, Long> queued = new HashMap<>();
+    try {
+      for (int done = 1; done <= jobs.size(); done++) {
+        Future<Long> future = completion.take();
+        Job job = submitted.get(future);
+        try {
+          long jobPixels = future.get();
+          pixels += jobPixels;
+          queued.put(job.output, jobPixels);
+          succeeded++;
+          System.out.println("[" + done + "/" + jobs.size() + "] ok: " + job);
+        } catch (ExecutionException e) {
+          failed++;
+          System.out.println("[" + done + "/" + jobs.size() + "] FAILED: " + job + ": " + e.getCause());
+        }
+      }
+      for (File output : writer.flush()) {
+        pixels -= queued.getOrDefault(output, 0L);
+        succeeded--;
+        failed++;
+        System.out.println("FAILED: could not write " + output);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdownNow();
+      writer.close();
+    }
+    return new Summary(succeeded, failed, pixels, System.nanoTime() - start);
+  }
+
+  private static File resolve(File base, String path) {
+    File file = new File(path.trim());
+    return file.isAbsolute() ? file : new File(base, path.trim());
+  }
+
+  /** Processor type for a CLI name such as {@code lsb}. */
+  private static ProcessorType processorType(String name) {
+    for (ProcessorType type : ProcessorType.values()) {
+      if (type.toString().substring(1).toLowerCase().equals(name)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("unknown processor " + name);
+  }
+}
@@ -0,0 +1,390 @@
+package processors;
+
+import java.io.File;
+
+import filereader.FileReader;
+import filereader.Image;
+import filereader.Resampler;
+import filereader.StripReader;
+import util.Parallel;
+
+/**
+ * Hides an image in mid-frequency DCT coefficients of independent square
+ * blocks of the source image.
+ * <p>
+ * Each {@code n x n} block ({@code n} is 8 or 16) of each RGB channel carries
+ * an {@code n/4 x n/4} patch of the hidden image: coefficient {@code (u, v)}
+ * with {@code n/4 <= u, v < n/2} is set to {@code (value - 128) * strength}.
+ * The hidden image is scaled to a quarter of the source's size along each
+ * axis to fit. Pixels of partial blocks along the right and bottom edges are
+ * left unchanged.
+ * <p>
+ * Unlike {@link FourierStego}, no transform spans the whole image, so blocks
+ * are processed in parallel with a constant working set, and large files are
+ * streamed in strips of whole block rows.
+ */
+public class DCTStego extends StreamingProcessor {
+  /** static instance */
+  private static DCTStego instance = new DCTStego(8);
+
+  /** side length of the DCT blocks, 8 or 16 */
+  private int blockSize;
+  /** coefficient units per level of a hidden pixel value */
+  private double strength = 0.25;
+
+  /**
+   * Constructs a new {@code DCTStego}.
+   * @param blockSize Side length of the DCT blocks.
+   */
+  private DCTStego(int blockSize) {
+    DCTStego.instance = this;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Gets the static instance of this class for method calls.
+   * @return {@code DCTStego} instance
+   */
+  public static DCTStego instance() {
+    return DCTStego.instance;
+  }
+
+  /**
+   * Encodes {@code encode} into the block DCT coefficients of {@code source}
+   * (see class description).
+   * @param source {@link Image} to conceal the encoded data.
+   * @param encode {@link Image} whose data to encode. It is scaled to
+   * {@link DCTStego#payloadSize(int)} of the source's dimensions.
+   * @return new {@link Image} resembling {@code source}.
+   * @throws IllegalArgumentException if {@code source} is smaller than a block.
+   */
+  @Override
+  public Image encode(Image source, Image encode) {
+    int n = blockSize;
+    int payloadWidth = payloadSize(source.width);
+    int payloadHeight = payloadSize(source.height);
+    if (payloadWidth == 0 || payloadHeight == 0) {
+      throw new IllegalArgumentException("image is smaller than one " + n + "x" + n + " block");
+    }
+    if (encode.width != payloadWidth || encode.height != payloadHeight) {
+      encode = Image.scale(encode, payloadWidth, payloadHeight);
+    }
+    int[] pixels = source.getPixels().clone();
+    encodeBlocks(pixels, source.width, encode.getPixels(), source.height / n, n, strength);
+    return new Image(source.width, source.height, pixels);
+  }
+
+  /**
+   * Decodes an image encoded into {@code decode} by
+   * {@link DCTStego#encode(Image, Image)} with the same block size and
+   * strength.
+   * @param decode {@link Image} with image encoded.
+   * @return Hidden image, {@link DCTStego#payloadSize(int)} of the
+   * dimensions of {@code decode}.
+   * @throws IllegalArgumentException if {@code decode} is smaller than a block.
+   */
+  @Override
+  public Image decode(Image decode) {
+    int n = blockSize;
+    int payloadWidth = payloadSize(decode.width);
+    int payloadHeight = payloadSize(decode.height);
+    if (payloadWidth == 0 || payloadHeight == 0) {
+      throw new IllegalArgumentException("image is smaller than one " + n + "x" + n + " block");
+    }
+    int[] pixels = new int[payloadWidth * payloadHeight];
+    decodeBlocks(decode.getPixels(), decode.width, pixels, decode.height / n, n, strength);
+    return new Image(payloadWidth, payloadHeight, pixels);
+  }
+
+  /**
+   * Size of the hidden image along an axis of the given length: a patch of
+   * {@code n/4} pixels for each whole block.
+   * @param length Source width or height.
+   * @return Hidden image width or height.
+   */
+  public int payloadSize(int length) {
+    return length / blockSize * (blockSize / 4);
+  }
+
+  /**
+   * Streaming version of {@link DCTStego#encode(Image, Image)}. The source is
+   * read, encoded and written in strips of whole block rows of about
+   * {@link DCTStego#getStripPixels()} pixels, reading and scaling only the
+   * rows of {@code encode} each strip needs. The output is identical to the
+   * in-memory encode.
+   * @param source Image file to conceal the encoded data.
+   * @param encode Image file whose data to encode.
+   * @param output PNG file to write.
+   * @return {@code true} if the output was written.
+   */
+  @Override
+  public boolean encode(File source, File encode, File output) {
+    StripReader sourceReader = FileReader.openImage(source);
+    StripReader encodeReader = FileReader.openImage(encode);
+    try {
+      if (sourceReader == null || encodeReader == null) {
+        return false;
+      }
+      int n = blockSize;
+      double strength = this.strength;
+      int width = sourceReader.getWidth();
+      int height = sourceReader.getHeight();
+      int encodeWidth = encodeReader.getWidth();
+      int encodeHeight = encodeReader.getHeight();
+      int payloadWidth = payloadSize(width);
+      int payloadHeight = payloadSize(height);
+      if (payloadWidth == 0 || payloadHeight == 0) {
+        System.out.println("Streaming encode failed: image is smaller than one block");
+        return false;
+      }
+      int blockRowsPerStrip = Math.max(1, getStripPixels() / width / n);
+      return FileReader.writeImage(width, height, blockRowsPerStrip * n, (y, rows) -> {
+        int[] pixels = FileReader.readStrip(sourceReader, y, rows).getPixels();
+        // the last strip may end in a partial block row, which is left as is
+        int blockRows = Math.max(0, Math.min(y + rows, height / n * n) - y) / n;
+        if (blockRows > 0) {
+          int first = y / n * (n / 4);
+          int end = first + blockRows * (n / 4);
+          Image payload;
+          if (encodeWidth == payloadWidth && encodeHeight == payloadHeight) {
+            payload = FileReader.readStrip(encodeReader, first, end - first);
+          } else { // scale only the rows of encode this strip needs
+            int[] band = Resampler.sourceRows(Resampler.Filter.BILINEAR, encodeHeight, payloadHeight, first, end);
+            payload = Resampler.resampleBand(FileReader.readStrip(encodeReader, band[0], band[1] - band[0]),
+                band[0], encodeHeight, payloadWidth, payloadHeight, first, end, Resampler.Filter.BILINEAR);
+          }
+          encodeBlocks(pixels, width, payload.getPixels(), blockRows, n, strength);
+        }
+        return new Image(width, rows, pixels);
+      }, output);
+    } finally {
+      FileReader.closeImage(sourceReader);
+      FileReader.closeImage(encodeReader);
+    }
+  }
+
+  /**
+   * Streaming version of {@link DCTStego#decode(Image)}. See
+   * {@link DCTStego#encode(File, File, File)}.
+   * @param decode Image file with image encoded.
+   * @param output PNG file to write the decoded image to.
+   * @return {@code true} if the output was written.
+   */
+  @Override
+  public boolean decode(File decode, File output) {
+    StripReader decodeReader = FileReader.openImage(decode);
+    try {
+      if (decodeReader == null) {
+        return false;
+      }
+      int n = blockSize;
+      double strength = this.strength;
+      int width = decodeReader.getWidth();
+      int payloadWidth = payloadSize(width);
+      int payloadHeight = payloadSize(decodeReader.getHeight());
+      if (payloadWidth == 0 || payloadHeight == 0) {
+        System.out.println("Streaming decode failed: image is smaller than one block");
+        return false;
+      }
+      int blockRowsPerStrip = Math.max(1, getStripPixels() / width / n);
+      // output strips are whole block rows, n/4 hidden rows each
+      return FileReader.writeImage(payloadWidth, payloadHeight, blockRowsPerStrip * (n / 4), (y, rows) -> {
+        int blockRows = rows / (n / 4);
+        Image strip = FileReader.readStrip(decodeReader, y / (n / 4) * n, blockRows * n);
+        int[] pixels = new int[payloadWidth * rows];
+        decodeBlocks(strip.getPixels(), width, pixels, blockRows, n, strength);
+        return new Image(payloadWidth, rows, pixels);
+      }, output);
+    } finally {
+      FileReader.closeImage(decodeReader);
+    }
+  }
+
+  /**
+   * Orthonormal DCT-II matrix for {@code n}-point blocks.
+   * @param n Block size.
+   * @return {@code basis[u * n + x]}, the weight of sample {@code x} in
+   * coefficient {@code u}.
+   */
+  private static double[] basis(int n) {
+    double[] basis = new double[n * n];
+    for (int u = 0; u < n; u++) {
+      double norm = Math.sqrt((u == 0 ? 1.0 : 2.0) / n);
+      for (int x = 0; x < n; x++) {
+        basis[u * n + x] = norm * Math.cos((2 * x + 1) * u * Math.PI / (2 * n));
+      }
+    }
+    return basis;
+  }
+
+  /**
+   * Encodes a hidden image into whole block rows of packed pixels, in place.
+   * Only the {@code (n/4)^2} embedding coefficients of each block are
+   * computed, and the block is corrected by their change alone, which is
+   * the same as a full forward and inverse transform.
+   * @param pixels Packed pixels, starting at a block row, {@code width} wide.
+   * @param width Image width.
+   * @param payload Packed hidden pixels, {@code n/4} rows per block row,
+   * {@code width / n * n/4} wide.
+   * @param blockRows Number of whole block rows to encode.
+   * @param n Block size.
+   * @param strength Coefficient units per hidden pixel level.
+   */
+  private static void encodeBlocks(int[] pixels, int width, int[] payload, int blockRows, int n,
+      double strength) {
+    double[] basis = basis(n);
+    int p = n / 4;
+    int blocks = width / n;
+    int payloadWidth = blocks * p;
+    Parallel.forBands(blockRows, (long) width * n, (start, end) -> {
+      double[] block = new double[n * n];
+      // partial transforms: rows[i * n + c] = sum over r of basis(p + i, r) * block(r, c)
+      double[] rows = new double[p * n];
+      double[] delta = new double[p * p];
+      double[] spread = new double[n * p];
+      for (int by = start; by < end; by++) {
+        for (int bx = 0; bx < blocks; bx++) {
+          int origin = by * n * width + bx * n;
+          for (int shift = 16; shift >= 0; shift -= 8) {
+            for (int r = 0; r < n; r++) {
+              for (int c = 0; c < n; c++) {
+                block[r * n + c] = (pixels[origin + r * width + c] >> shift) & 0xFF;
+              }
+            }
+            partialTransform(block, basis, rows, n, p);
+            // change each embedding coefficient to its hidden value
+            for (int i = 0; i < p; i++) {
+              for (int j = 0; j < p; j++) {
+                double coefficient = 0;
+                for (int c = 0; c < n; c++) {
+                  coefficient += rows[i * n + c] * basis[(p + j) * n + c];
+                }
+                int value = (payload[(by * p + i) * payloadWidth + bx * p + j] >> shift) & 0xFF;
+                delta[i * p + j] = (value - 128) * strength - coefficient;
+              }
+            }
+            // inverse transform of the change: spread[r * p + j] = sum over i of basis(p + i, r) * delta(i, j)
+            for (int r = 0; r < n; r++) {
+              for (int j = 0; j < p; j++) {
+                double sum = 0;
+                for (int i = 0; i < p; i++) {
+                  sum += basis[(p + i) * n + r] * delta[i * p + j];
+                }
+                spread[r * p + j] = sum;
+              }
+            }
+            for (int r = 0; r < n; r++) {
+              int offset = origin + r * width;
+              for (int c = 0; c < n; c++) {
+                double value = block[r * n + c];
+                for (int j = 0; j < p; j++) {
+                  value += spread[r * p + j] * basis[(p + j) * n + c];
+                }
+                int level = (int) Math.round(Math.max(0, Math.min(255, value)));
+                pixels[offset + c] = (pixels[offset + c] & ~(0xFF << shift)) | (level << shift);
+              }
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Reads the hidden image out of whole block rows of packed pixels. See
+   * {@link DCTStego#encodeBlocks(int[], int, int[], int, int, double)}.
+   * @param pixels Packed pixels, starting at a block row, {@code width} wide.
+   * @param width Image width.
+   * @param payload Storage for the hidden pixels, {@code n/4} rows per block
+   * row, {@code width / n * n/4} wide.
+   * @param blockRows Number of whole block rows to decode.
+   * @param n Block size.
+   * @param strength Coefficient units per hidden pixel level.
+   */
+  private static void decodeBlocks(int[] pixels, int width, int[] payload, int blockRows, int n,
+      double strength) {
+    double[] basis = basis(n);
+    int p = n / 4;
+    int blocks = width / n;
+    int payloadWidth = blocks * p;
+    Parallel.forBands(blockRows, (long) width * n, (start, end) -> {
+      double[] block = new double[n * n];
+      double[] rows = new double[p * n];
+      for (int by = start; by < end; by++) {
+        for (int bx = 0; bx < blocks; bx++) {
+          int origin = by * n * width + bx * n;
+          for (int shift = 16; shift >= 0; shift -= 8) {
+            for (int r = 0; r < n; r++) {
+              for (int c = 0; c < n; c++) {
+                block[r * n + c] = (pixels[origin + r * width + c] >> shift) & 0xFF;
+              }
+            }
+            partialTransform(block, basis, rows, n, p);
+            for (int i = 0; i < p; i++) {
+              for (int j = 0; j < p; j++) {
+                double coefficient = 0;
+                for (int c = 0; c < n; c++) {
+                  coefficient += rows[i * n + c] * basis[(p + j) * n + c];
+                }
+                int level = (int) Math.round(Math.max(0, Math.min(255, coefficient / strength + 128)));
+                payload[(by * p + i) * payloadWidth + bx * p + j] |= level << shift;
+              }
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /** Vertical pass of the block transform, for the {@code p} embedding rows only. */
+  private static void partialTransform(double[] block, double[] basis, double[] rows, int n, int p) {
+    for (int i = 0; i < p; i++) {
+      for (int c = 0; c < n; c++) {
+        double sum = 0;
+        for (int r = 0; r < n; r++) {
+          sum += basis[(p + i) * n + r] * block[r * n + c];
+        }
+        rows[i * n + c] = sum;
+      }
+    }
+  }
+
+  /**
+   * Sets the block size. Decoding must use the size the image was encoded with.
+   * @param blockSize 8 or 16.
+   * @throws IllegalArgumentException if {@code blockSize} is not 8 or 16.
+   */
+  public void setBlockSize(int blockSize) {
+    if (blockSize != 8 && blockSize != 16) {
+      throw new IllegalArgumentException("block size must be 8 or 16");
+    }
+    this.blockSize = blockSize;
+    System.out.println("Block size set: " + blockSize);
+  }
+
+  /**
+   * Get the block size.
+   * @return Block size.
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Sets the coefficient units per hidden pixel level. Higher values survive
+   * rounding better but are more visible. Decoding must use the strength the
+   * image was encoded with.
+   * @param strength New strength.
+   */
+  public void setStrength(double strength) {
+    this.strength = strength;
+  }
+
+  /**
+   * Get the coefficient units per hidden pixel level.
+   * @return Strength.
+   */
+  public double getStrength() {
+    return strength;
+  }
+}
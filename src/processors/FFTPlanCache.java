@@ -0,0 +1,135 @@
+package processors;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Bounded, thread-safe LRU cache of FFT plans keyed by image dimensions and
+// precision.
+//
+// Building a plan precomputes JTransforms' twiddle (and, for sizes with large
+// prime factors, Bluestein) tables, which costs about as much as a transform.
+// Batches of same-sized images reuse one plan instead. The cache holds at most
+// maxPlans plans and about maxBytes of tables, evicting the least recently
+// used first. Plans are immutable after construction and safe to share.
+public final class FFTPlanCache {
+    // A cacheable plan
+    interface Plan {
+        // Approximate size of the precomputed tables
+        long planBytes();
+    }
+
+    // Set in the key of single-precision plans; dimensions use bits 0-62
+    private static final long FLOAT_KEY = 1L << 63;
+
+    private static final Map<Long, Plan> PLANS = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static int maxPlans = 16;
+    private static long maxBytes = 64L << 20;
+    private static long bytes;
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    private FFTPlanCache() {
+    }
+
+    // Plan for height x width planes, built and cached on a miss
+    static HalfSpectrumFFT plan(int height, int width) {
+        return plan(((long) height << 32) | width, () -> new HalfSpectrumFFT(height, width));
+    }
+
+    // Single-precision plan for height x width planes
+    static FloatHalfSpectrumFFT floatPlan(int height, int width) {
+        return plan(FLOAT_KEY | ((long) height << 32) | width, () -> new FloatHalfSpectrumFFT(height, width));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Plan> T plan(long key, Supplier<T> factory) {
+        synchronized (FFTPlanCache.class) {
+            Plan plan = PLANS.get(key);
+            if (plan != null) {
+                hits++;
+                return (T) plan;
+            }
+            misses++;
+        }
+        // built outside the lock; if two threads race, one copy is kept
+        T built = factory.get();
+        synchronized (FFTPlanCache.class) {
+            Plan plan = PLANS.get(key);
+            if (plan != null) {
+                return (T) plan;
+            }
+            PLANS.put(key, built);
+            bytes += built.planBytes();
+            trim();
+            return built;
+        }
+    }
+
+    // Set the limits, evicting plans until the cache fits them. A plan larger
+    // than maxBytes on its own is still used, just not kept.
+    public static synchronized void setLimits(int maxPlans, long maxBytes) {
+        if (maxPlans < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("limits must be non-negative");
+        }
+        FFTPlanCache.maxPlans = maxPlans;
+        FFTPlanCache.maxBytes = maxBytes;
+        trim();
+    }
+
+    public static synchronized int getMaxPlans() {
+        return maxPlans;
+    }
+
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public static synchronized long hits() {
+        return hits;
+    }
+
+    public static synchronized long misses() {
+        return misses;
+    }
+
+    public static synchronized long evictions() {
+        return evictions;
+    }
+
+    public static synchronized int size() {
+        return PLANS.size();
+    }
+
+    // Estimated memory held by cached plans
+    public static synchronized long bytes() {
+        return bytes;
+    }
+
+    // Drop every plan and reset the counters
+    public static synchronized void clear() {
+        PLANS.clear();
+        bytes = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public static synchronized String stats() {
+        return String.format("FFT plans: %d cached (%.1f MB), %d hits, %d misses, %d evictions",
+                PLANS.size(), bytes / 1e6, hits, misses, evictions);
+    }
+
+    private static void trim() {
+        Iterator<Plan> eldest = PLANS.values().iterator();
+        while (eldest.hasNext() && (PLANS.size() > maxPlans || bytes > maxBytes)) {
+            bytes -= eldest.next().planBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package processors;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+// Single-precision AbstractHalfSpectrumFFT: spectra are
+// float[h][2 * (w/2 + 1)], so half the memory and bandwidth. Planes stay
+// double on both ends, converting as rows are copied in and out.
+class FloatHalfSpectrumFFT extends AbstractHalfSpectrumFFT<float[]> {
+    private final FloatFFT_1D rowFFT;
+    private final FloatFFT_1D columnFFT;
+
+    FloatHalfSpectrumFFT(int height, int width) {
+        super(height, width);
+        this.rowFFT = new FloatFFT_1D(width);
+        // square planes share one plan for both axes
+        this.columnFFT = (height == width) ? rowFFT : new FloatFFT_1D(height);
+    }
+
+    // Single-precision tables are half the size of HalfSpectrumFFT's
+    @Override
+    public long planBytes() {
+        return planBytes(height, width) / 2;
+    }
+
+    @Override
+    float[][] newArrays(int count, int length) {
+        return new float[count][length];
+    }
+
+    @Override
+    float[] newArray(int length) {
+        return new float[length];
+    }
+
+    @Override
+    double get(float[] array, int index) {
+        return array[index];
+    }
+
+    @Override
+    void set(float[] array, int index, double value) {
+        array[index] = (float) value;
+    }
+
+    @Override
+    void load(double[] plane, int offset, float[] row) {
+        for (int x = 0, i = offset; x < width; x++, i++) {
+            row[x] = (float) plane[i];
+        }
+    }
+
+    @Override
+    void store(float[] row, double[] plane, int offset) {
+        for (int x = 0, i = offset; x < width; x++, i++) {
+            plane[i] = row[x];
+        }
+    }
+
+    @Override
+    void realForward(float[] row) {
+        rowFFT.realForward(row);
+    }
+
+    @Override
+    void realInverse(float[] row) {
+        rowFFT.realInverse(row, true);
+    }
+
+    @Override
+    void complexForward(float[] column) {
+        columnFFT.complexForward(column);
+    }
+
+    @Override
+    void complexInverse(float[] column) {
+        columnFFT.complexInverse(column, true);
+    }
+}
@@ -1,10 +1,10 @@
 package processors;
 
-import org.jtransforms.fft.DoubleFFT_2D;
+import org.jtransforms.utils.CommonUtils;
 
-import filereader.FileReader;
 import filereader.Image;
-import filereader.FileReader.ImageType;
+import pl.edu.icm.jlargearrays.ConcurrencyUtils;
+import util.Parallel;
 
 public class FourierStego implements ImageProcessor {
     private static FourierStego instance = new FourierStego();
@@ -21,198 +21,376 @@ public class FourierStego implements ImageProcessor {
     public static double alpha = 1;
     public static double scale = 60;
 
-    private static double[][] toDoubleArray(int[][] channel) {
-        // channel[x][y]: x goes up to channel.length, y up to channel[0].length
-        int w = channel.length;
-        int h = channel[0].length;
+    // How encode and decode use threads
+    public enum Threading {
+        // Spread one image over all cores: channels, rows and columns run
+        // concurrently on Parallel's pool. Best for one image at a time.
+        LATENCY,
+        // Run each call on its calling thread only, with JTransforms kept
+        // single-threaded too. Best when many images are processed at once,
+        // e.g. a batch with one worker per core.
+        THROUGHPUT
+    }
 
-        double[][] result = new double[h][2 * w];
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                // Real part at index 2*x, imaginary at 2*x+1
-                result[y][2 * x] = channel[x][y];
-                result[y][2 * x + 1] = 0.0;
-            }
-        }
-        return result;
+    private static volatile Threading threading = Threading.LATENCY;
+
+    // Precision of the spectra. FLOAT halves their memory and bandwidth; see
+    // comparePrecision for what it costs on a given image.
+    public enum Precision {
+        DOUBLE,
+        FLOAT
     }
 
-    private static double[][] toDoubleArray(double[][] channel) {
-        // channel[x][y]: x goes up to channel.length, y up to channel[0].length
-        int w = channel.length;
-        int h = channel[0].length;
+    private static volatile Precision precision = Precision.DOUBLE;
 
-        double[][] result = new double[h][2 * w];
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                // Real part at index 2*x, imaginary part at 2*x+1
-                result[y][2 * x] = channel[x][y];
-                result[y][2 * x + 1] = 0.0;
-            }
+    public static Precision getPrecision() {
+        return precision;
+    }
+
+    // Decoding should use the precision the image was encoded with
+    public static void setPrecision(Precision precision) {
+        FourierStego.precision = precision;
+    }
+
+    public static Threading getThreading() {
+        return threading;
+    }
+
+    // Also sets JTransforms' own thread count: one for THROUGHPUT, one per
+    // core for LATENCY. Call setFFTThreads afterwards to override it.
+    public static void setThreading(Threading threading) {
+        FourierStego.threading = threading;
+        setFFTThreads(threading == Threading.THROUGHPUT ? 1 : Runtime.getRuntime().availableProcessors());
+    }
+
+    // Threads JTransforms may use inside a single 1D transform. It only
+    // splits transforms longer than its size thresholds (see CommonUtils),
+    // i.e. rows or columns of very large images. Applies to all of JTransforms.
+    public static void setFFTThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
         }
-        return result;
+        ConcurrencyUtils.setNumberOfThreads(threads);
     }
 
-    private static int[][] toIntArray(double[][] complexData) {
-        int h = complexData.length;
-        int w = complexData[0].length / 2;
-        int[][] result = new int[w][h];
+    public static int getFFTThreads() {
+        return ConcurrencyUtils.getNumberOfThreads();
+    }
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                double realVal = complexData[y][2 * x];
-                result[x][y] = (int) Math.round(realVal);
+    // Shortest 1D transform JTransforms splits over two threads
+    public static long getFFTThreadsMinLength() {
+        return CommonUtils.getThreadsBeginN_1D_FFT_2Threads();
+    }
+
+    // Size of the plane each channel is transformed at
+    public enum TransformSize {
+        // The whole image at its exact size
+        EXACT,
+        // The largest 2^a 3^b 5^c block that fits in the image's top-left
+        // corner. The pixels right of and below it carry no payload and are
+        // left as they are.
+        SMOOTH
+    }
+
+    private static volatile TransformSize transformSize = TransformSize.EXACT;
+
+    public static TransformSize getTransformSize() {
+        return transformSize;
+    }
+
+    // Sizes with a large prime factor take JTransforms' much slower general
+    // path; SMOOTH avoids it. The block lies inside the image, so decode
+    // transforms exactly the pixels encode wrote. Decoding must use the size
+    // the image was encoded with.
+    public static void setTransformSize(TransformSize transformSize) {
+        FourierStego.transformSize = transformSize;
+    }
+
+    // Size transformed along an axis of the given length
+    private static int transformSize(int length, TransformSize size) {
+        return (size == TransformSize.EXACT) ? length : smoothSize(length);
+    }
+
+    // Largest n <= length of the form 2^a 3^b 5^c (1 for lengths below 1)
+    static int smoothSize(int length) {
+        for (int n = length; n > 1; n--) {
+            int rest = n;
+            for (int factor : new int[] { 2, 3, 5 }) {
+                while (rest % factor == 0) {
+                    rest /= factor;
+                }
+            }
+            if (rest == 1) {
+                return n;
             }
         }
-        return result;
+        return 1;
     }
 
-    private static double[][] removeImaginaryComponents(double[][] complexArray) {
-        int h = complexArray.length;
-        int w = complexArray[0].length / 2; // Since every real value is at 2*x, the width is half
-
-        double[][] result = new double[w][h]; // Restore to original dimensions
+    // Top-left w x h corner of a row-major plane planeW wide
+    private static double[] cropPlane(double[] plane, int planeW, int w, int h) {
+        if (planeW == w && plane.length == w * h) {
+            return plane;
+        }
+        double[] cropped = new double[w * h];
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(plane, y * planeW, cropped, y * w, w);
+        }
+        return cropped;
+    }
 
+    // Copy of a row-major plane planeW wide with its top-left w x h corner
+    // replaced by block
+    private static double[] withBlock(double[] plane, int planeW, double[] block, int w, int h) {
+        if (block.length == plane.length) {
+            return block;
+        }
+        double[] result = plane.clone();
         for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                result[x][y] = complexArray[y][2 * x]; // Take only the real part
-            }
+            System.arraycopy(block, y * w, result, y * planeW, w);
         }
         return result;
     }
 
+    private static void run(Runnable task) {
+        if (threading == Threading.THROUGHPUT) {
+            Parallel.runSequential(task);
+        } else {
+            task.run();
+        }
+    }
+
     @Override
     public Image encode(Image storage, Image toEncode) {
-        int h = storage.height; // number of rows
-        int w = storage.width; // number of columns
-
-        // Convert each RGB channel to double arrays for FFT
-        double[][] r = toDoubleArray(storage.labL);
-        double[][] g = toDoubleArray(storage.labA);
-        double[][] b = toDoubleArray(storage.labB);
+        Precision precision = FourierStego.precision;
+        TransformSize size = FourierStego.transformSize;
+        Image[] result = new Image[1];
+        run(() -> result[0] = encodeChannels(storage, toEncode, precision, size));
+        return result[0];
+    }
 
-        // Perform forward FFT on each channel
-        DoubleFFT_2D fft2D = new DoubleFFT_2D(h, w);
-        fft2D.complexForward(r);
-        fft2D.complexForward(g);
-        fft2D.complexForward(b);
+    private Image encodeChannels(Image storage, Image toEncode, Precision precision, TransformSize size) {
+        int imageH = storage.height;
+        int imageW = storage.width;
+        // transform size: the image's own, or its largest FFT-friendly block
+        int h = transformSize(imageH, size); // number of rows
+        int w = transformSize(imageW, size); // number of columns
 
+        HalfSpectrumFFT fft = (precision == Precision.DOUBLE) ? FFTPlanCache.plan(h, w) : null;
+        FloatHalfSpectrumFFT floatFFT = (precision == Precision.FLOAT) ? FFTPlanCache.floatPlan(h, w) : null;
         Image scaled = Image.scale(toEncode, w / 2, h / 2);
+        double[][] planes = { storage.getLabL(), storage.getLabA(), storage.getLabB() };
+        // each pipeline drops its Lab plane once transformed
+        storage.releaseLab();
+
+        // L, a and b are independent, so their pipelines run concurrently
+        double[][] encoded = new double[3][];
+        Parallel.forBands(3, (long) w * h, (start, end) -> {
+            for (int c = start; c < end; c++) {
+                double[] plane = planes[c];
+                planes[c] = null;
+                double[] block = cropPlane(plane, imageW, w, h);
+                block = (fft != null) ? encodeChannel(fft, block, scaled, 16 - 8 * c)
+                        : encodeChannel(floatFFT, block, scaled, 16 - 8 * c);
+                encoded[c] = withBlock(plane, imageW, block, w, h);
+            }
+        });
+        return new Image(imageW, imageH, encoded[0], encoded[1], encoded[2]);
+    }
+
+    // Embed one channel of 'scaled' (selected by shift) into a Lab plane
+    private static double[] encodeChannel(HalfSpectrumFFT fft, double[] plane, Image scaled, int shift) {
+        // Forward FFT, keeping the non-redundant half
+        double[][] spectrum = fft.forward(plane);
+        embed(spectrum, scaled, shift, fft.width, fft.height);
+        // Only columns that mirror onto themselves need their pairs restored
+        fft.enforceSelfMirroredColumns(spectrum);
+        // Inverse FFT to get back to spatial domain
+        return fft.inverse(spectrum);
+    }
 
-        // Replace magnitude with the pixel value from 'toEncode',
-        // preserving the phase from the original 'storage' image
+    private static double[] encodeChannel(FloatHalfSpectrumFFT fft, double[] plane, Image scaled, int shift) {
+        float[][] spectrum = fft.forward(plane);
+        embed(spectrum, scaled, shift, fft.width, fft.height);
+        fft.enforceSelfMirroredColumns(spectrum);
+        return fft.inverse(spectrum);
+    }
+
+    // Replace magnitude with one channel of the pixel values from 'scaled'
+    // (selected by shift), preserving the phase from the original image. The
+    // band lies in the stored half; its mirror bins follow implicitly.
+    private static void embed(double[][] spectrum, Image scaled, int shift, int w, int h) {
         for (int y = h / crop; y < h / 2; y++) {
+            double[] row = spectrum[y];
             for (int x = w / crop; x < w / 2; x++) {
                 int realIndex = 2 * x;
                 int imagIndex = 2 * x + 1;
 
-                // Current phase angles from 'storage'
-                double angleR = Math.atan2(r[y][imagIndex], r[y][realIndex]);
-                double angleG = Math.atan2(g[y][imagIndex], g[y][realIndex]);
-                double angleB = Math.atan2(b[y][imagIndex], b[y][realIndex]);
+                // Current phase angle from the original image
+                double angle = Math.atan2(row[imagIndex], row[realIndex]);
+                double magStorage = Math.sqrt(row[realIndex] * row[realIndex] + row[imagIndex] * row[imagIndex]);
 
                 // Use the toEncode pixel magnitude
-
-                double magRStorage = Math.sqrt(r[y][realIndex] * r[y][realIndex] + r[y][imagIndex] * r[y][imagIndex]);
-                double magGStorage = Math.sqrt(g[y][realIndex] * g[y][realIndex] + g[y][imagIndex] * g[y][imagIndex]);
-                double magBStorage = Math.sqrt(b[y][realIndex] * b[y][realIndex] + b[y][imagIndex] * b[y][imagIndex]);
-
-                double magR = alpha * (scaled.r[x][y] * scale) + (1 - alpha) * magRStorage;
-                double magG = alpha * (scaled.g[x][y] * scale) + (1 - alpha) * magGStorage;
-                double magB = alpha * (scaled.b[x][y] * scale) + (1 - alpha) * magBStorage;
-
-                // System.out.println(magRStorage/magR);
+                int value = (scaled.getPixel(x, y) >> shift) & 0xFF;
+                double mag = alpha * (value * scale) + (1 - alpha) * magStorage;
 
                 // Rebuild real + imag using that magnitude and the original phase
-                r[y][realIndex] = magR * Math.cos(angleR);
-                r[y][imagIndex] = magR * Math.sin(angleR);
-
-                g[y][realIndex] = magG * Math.cos(angleG);
-                g[y][imagIndex] = magG * Math.sin(angleG);
-
-                b[y][realIndex] = magB * Math.cos(angleB);
-                b[y][imagIndex] = magB * Math.sin(angleB);
+                row[realIndex] = mag * Math.cos(angle);
+                row[imagIndex] = mag * Math.sin(angle);
             }
         }
-
-        enforceConjugateSymmetry(r, h, w);
-        enforceConjugateSymmetry(g, h, w);
-        enforceConjugateSymmetry(b, h, w);
-
-        // Inverse FFT to get back to spatial domain
-        fft2D.complexInverse(r, true);
-        fft2D.complexInverse(g, true);
-        fft2D.complexInverse(b, true);
-
-        return new Image(removeImaginaryComponents(r), removeImaginaryComponents(g), removeImaginaryComponents(b));
     }
 
-    private static void enforceConjugateSymmetry(double[][] data, int h, int w) {
-        // Loop over every frequency coordinate
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int mirrorX = (w - x) % w;
-                int mirrorY = (h - y) % h;
-
-                // Use lexicographical ordering to update only one of each conjugate pair.
-                // (If the mirror index is the same as the current index, we have a
-                // self-conjugate bin.)
-                if (y < mirrorY || (y == mirrorY && x <= mirrorX)) {
-                    if (y == mirrorY && x == mirrorX) {
-                        // Self-conjugate bin: force the imaginary part to 0.
-                        data[y][2 * x + 1] = 0.0;
-                    } else {
-                        // Get the current bin’s real and imaginary parts.
-                        double real = data[y][2 * x];
-                        double imag = data[y][2 * x + 1];
-                        // Set the mirror bin to be the complex conjugate.
-                        data[mirrorY][2 * mirrorX] = real;
-                        data[mirrorY][2 * mirrorX + 1] = -imag;
-                    }
-                }
+    // Single-precision embed; the arithmetic is still done in double
+    private static void embed(float[][] spectrum, Image scaled, int shift, int w, int h) {
+        for (int y = h / crop; y < h / 2; y++) {
+            float[] row = spectrum[y];
+            for (int x = w / crop; x < w / 2; x++) {
+                int realIndex = 2 * x;
+                int imagIndex = 2 * x + 1;
+                double angle = Math.atan2(row[imagIndex], row[realIndex]);
+                double magStorage = Math.sqrt(row[realIndex] * row[realIndex] + row[imagIndex] * row[imagIndex]);
+                int value = (scaled.getPixel(x, y) >> shift) & 0xFF;
+                double mag = alpha * (value * scale) + (1 - alpha) * magStorage;
+                row[realIndex] = (float) (mag * Math.cos(angle));
+                row[imagIndex] = (float) (mag * Math.sin(angle));
             }
         }
     }
 
     @Override
     public Image decode(Image encoded) {
-        int h = encoded.height;
-        int w = encoded.width;
+        Precision precision = FourierStego.precision;
+        TransformSize size = FourierStego.transformSize;
+        Image[] result = new Image[1];
+        run(() -> result[0] = decodeChannels(encoded, precision, size));
+        return result[0];
+    }
 
-        // Convert each RGB channel to double arrays for FFT
-        double[][] r = toDoubleArray(encoded.labL);
-        double[][] g = toDoubleArray(encoded.labA);
-        double[][] b = toDoubleArray(encoded.labB);
+    private Image decodeChannels(Image encoded, Precision precision, TransformSize size) {
+        int imageH = encoded.height;
+        int imageW = encoded.width;
+        // same geometry as encode: the band is found in the same block
+        int h = transformSize(imageH, size);
+        int w = transformSize(imageW, size);
+
+        HalfSpectrumFFT fft = (precision == Precision.DOUBLE) ? FFTPlanCache.plan(h, w) : null;
+        FloatHalfSpectrumFFT floatFFT = (precision == Precision.FLOAT) ? FFTPlanCache.floatPlan(h, w) : null;
+        double[][] planes = { cropPlane(encoded.getLabL(), imageW, w, h),
+                cropPlane(encoded.getLabA(), imageW, w, h),
+                cropPlane(encoded.getLabB(), imageW, w, h) };
+        encoded.releaseLab();
+
+        // The hidden image is read back from every other bin of the embedding
+        // band, so the output is half the band size along each axis.
+        int outW = (w / 2 - w / crop) / 2;
+        int outH = (h / 2 - h / crop) / 2;
+        int[][] channels = new int[3][];
+
+        Parallel.forBands(3, (long) w * h, (start, end) -> {
+            for (int c = start; c < end; c++) {
+                double[] plane = planes[c];
+                planes[c] = null;
+                // Only the band's sampled columns are read, so only those
+                // get a column FFT (and only those are kept)
+                channels[c] = (fft != null) ? extract(fft.forwardColumns(plane, w / crop, 2, outW), h, outW, outH)
+                        : extract(floatFFT.forwardColumns(plane, w / crop, 2, outW), h, outW, outH);
+            }
+        });
 
-        // Perform forward FFT on each channel
-        DoubleFFT_2D fft2D = new DoubleFFT_2D(h, w);
-        fft2D.complexForward(r);
-        fft2D.complexForward(g);
-        fft2D.complexForward(b);
+        int[] pixels = new int[outW * outH];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Image.pack(channels[0][i], channels[1][i], channels[2][i]);
+        }
+        return new Image(outW, outH, pixels);
+    }
 
-        double[][] newR = new double[w / 2 - w / crop][h / 2 - h / crop];
-        double[][] newG = new double[w / 2 - w / crop][h / 2 - h / crop];
-        double[][] newB = new double[w / 2 - w / crop][h / 2 - h / crop];
+    // Hidden channel values from every other bin of the embedding band,
+    // given that band's sampled spectrum columns
+    private static int[] extract(double[][] columns, int h, int outW, int outH) {
+        int[] channel = new int[outW * outH];
+        for (int outX = 0; outX < outW; outX++) {
+            double[] column = columns[outX];
+            for (int outY = 0; outY < outH; outY++) {
+                int y = h / crop + 2 * outY;
+                int realIndex = 2 * y;
+                int imagIndex = 2 * y + 1;
+                channel[outY * outW + outX] = (int) (Math
+                        .sqrt(column[realIndex] * column[realIndex] + column[imagIndex] * column[imagIndex]) / scale
+                        / alpha);
+            }
+        }
+        return channel;
+    }
 
-        for (int y = h / crop; y < h / 2; y++) {
-            for (int x = w / crop; x < w / 2; x++) {
-                int realIndex = 2 * x;
-                int imagIndex = 2 * x + 1;
+    private static int[] extract(float[][] columns, int h, int outW, int outH) {
+        int[] channel = new int[outW * outH];
+        for (int outX = 0; outX < outW; outX++) {
+            float[] column = columns[outX];
+            for (int outY = 0; outY < outH; outY++) {
+                int y = h / crop + 2 * outY;
+                double re = column[2 * y];
+                double im = column[2 * y + 1];
+                channel[outY * outW + outX] = (int) (Math.sqrt(re * re + im * im) / scale / alpha);
+            }
+        }
+        return channel;
+    }
 
-                int magRStorage = (int) (Math
-                        .sqrt(r[y][realIndex] * r[y][realIndex] + r[y][imagIndex] * r[y][imagIndex]) / scale / alpha);
-                int magGStorage = (int) (Math
-                        .sqrt(g[y][realIndex] * g[y][realIndex] + g[y][imagIndex] * g[y][imagIndex]) / scale / alpha);
-                int magBStorage = (int) (Math
-                        .sqrt(b[y][realIndex] * b[y][realIndex] + b[y][imagIndex] * b[y][imagIndex]) / scale / alpha);
+    // How far the float path's results are from the double path's
+    public static class PrecisionReport {
+        // Decoded hidden image, per channel value
+        public final int maxPayloadError;
+        public final double meanPayloadError;
+        // Encoded image, per channel value
+        public final int maxCoverError;
+        public final double meanCoverError;
+
+        private PrecisionReport(long[] payloadError, long[] coverError) {
+            this.maxPayloadError = (int) payloadError[0];
+            this.meanPayloadError = payloadError[1] / (3.0 * payloadError[2]);
+            this.maxCoverError = (int) coverError[0];
+            this.meanCoverError = coverError[1] / (3.0 * coverError[2]);
+        }
 
-                newR[x - w / crop][y - h / crop] = magRStorage;
-                newG[x - w / crop][y - h / crop] = magGStorage;
-                newB[x - w / crop][y - h / crop] = magBStorage;
-            }
+        @Override
+        public String toString() {
+            return String.format("float vs double: payload error max %d, mean %.4f; "
+                    + "encoded image error max %d, mean %.4f", maxPayloadError, meanPayloadError,
+                    maxCoverError, meanCoverError);
         }
+    }
 
-        return new Image(toIntArray(removeImaginaryComponents(newR)), toIntArray(removeImaginaryComponents(newG)),
-                toIntArray(removeImaginaryComponents(newB)));
+    // Encode and decode with both precisions and compare the results. The
+    // encoded images are rounded to 8-bit RGB before decoding, as saving does.
+    public static PrecisionReport comparePrecision(Image storage, Image toEncode) {
+        FourierStego processor = instance();
+        TransformSize size = FourierStego.transformSize;
+        Image[] encoded = new Image[2];
+        Image[] decoded = new Image[2];
+        for (Precision precision : Precision.values()) {
+            int i = precision.ordinal();
+            run(() -> {
+                Image rounded = processor.encodeChannels(storage, toEncode, precision, size);
+                encoded[i] = new Image(rounded.width, rounded.height, rounded.getPixels());
+                decoded[i] = processor.decodeChannels(encoded[i], precision, size);
+            });
+        }
+        return new PrecisionReport(difference(decoded[0].getPixels(), decoded[1].getPixels()),
+                difference(encoded[0].getPixels(), encoded[1].getPixels()));
+    }
+
+    // {max, sum, pixels} of per-channel absolute differences
+    private static long[] difference(int[] a, int[] b) {
+        long max = 0;
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int error = Math.abs(((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF));
+                max = Math.max(max, error);
+                sum += error;
+            }
+        }
+        return new long[] { max, sum, a.length };
     }
 }
@@ -0,0 +1,72 @@
+package processors;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+// Double-precision AbstractHalfSpectrumFFT: spectra are
+// double[h][2 * (w/2 + 1)].
+class HalfSpectrumFFT extends AbstractHalfSpectrumFFT<double[]> {
+    private final DoubleFFT_1D rowFFT;
+    private final DoubleFFT_1D columnFFT;
+
+    HalfSpectrumFFT(int height, int width) {
+        super(height, width);
+        this.rowFFT = new DoubleFFT_1D(width);
+        // square planes share one plan for both axes
+        this.columnFFT = (height == width) ? rowFFT : new DoubleFFT_1D(height);
+    }
+
+    @Override
+    public long planBytes() {
+        return planBytes(height, width);
+    }
+
+    @Override
+    double[][] newArrays(int count, int length) {
+        return new double[count][length];
+    }
+
+    @Override
+    double[] newArray(int length) {
+        return new double[length];
+    }
+
+    @Override
+    double get(double[] array, int index) {
+        return array[index];
+    }
+
+    @Override
+    void set(double[] array, int index, double value) {
+        array[index] = value;
+    }
+
+    @Override
+    void load(double[] plane, int offset, double[] row) {
+        System.arraycopy(plane, offset, row, 0, width);
+    }
+
+    @Override
+    void store(double[] row, double[] plane, int offset) {
+        System.arraycopy(row, 0, plane, offset, width);
+    }
+
+    @Override
+    void realForward(double[] row) {
+        rowFFT.realForward(row);
+    }
+
+    @Override
+    void realInverse(double[] row) {
+        rowFFT.realInverse(row, true);
+    }
+
+    @Override
+    void complexForward(double[] column) {
+        columnFFT.complexForward(column);
+    }
+
+    @Override
+    void complexInverse(double[] column) {
+        columnFFT.complexInverse(column, true);
+    }
+}
@@ -1,9 +1,14 @@
 package processors;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import cli.ParsedCommand;
 import filereader.FileReader;
 import filereader.FileReader.ImageType;
 import filereader.Image;
+import filereader.RawImageFile;
 
 public interface ImageProcessor {
   public abstract Image encode(Image source, Image encode);
@@ -17,22 +22,69 @@ public interface ImageProcessor {
    */
   public static void execute(ParsedCommand command) {
     ImageProcessor processor = command.getProcessor().toInstance();
+    if (processor instanceof StreamingProcessor
+        && executeStreaming((StreamingProcessor) processor, command)) {
+      return;
+    }
+    // record what produced the output in raw image headers
+    Map<String, String> parameters = new LinkedHashMap<>();
+    parameters.put("processor", command.getProcessor().toString());
+    parameters.put("operation", command.isEncode() ? "encode" : "decode");
     if (command.isEncode()) {
-      Image source = FileReader.readImage(ImageType.Source, "source.png");
-      Image encode = FileReader.readImage(ImageType.Encode, "encode.png");
+      Image source = FileReader.readImage(FileReader.resolve(ImageType.Source, "source"));
+      Image encode = FileReader.readImage(FileReader.resolve(ImageType.Encode, "encode"));
       Image output = processor.encode(source, encode);
       if (command.isPrepare().isPresent() && command.isPrepare().get()) {
         FileReader.writeImage(Image.toBufferedImage(output),
           ImageType.Decode, "decode.png");
       } else if (command.isPrepare().isPresent() && command.getPath().isPresent()) {
-        FileReader.writeImage(Image.toBufferedImage(output), command.getPath().get());
+        FileReader.writeImage(output, parameters, FileReader.getFile(command.getPath().get()));
       } else if (command.isPrepare().isEmpty()) {
         FileReader.writeImage(Image.toBufferedImage(output), ImageType.Output, "output.png");
       }
     } else {
-      Image decode = FileReader.readImage(ImageType.Decode, "decode.png");
+      Image decode = FileReader.readImage(FileReader.resolve(ImageType.Decode, "decode"));
       Image output = processor.decode(decode);
       FileReader.writeImage(Image.toBufferedImage(output), ImageType.Output, "output.png");
     }
   }
+
+  /**
+   * Runs {@code command} with the streaming methods of {@code processor}
+   * if its input image is too large to load whole.
+   * @param processor Streaming processor.
+   * @param command {@link ParsedCommand} to execute.
+   * @return {@code true} if the command was executed by streaming.
+   */
+  private static boolean executeStreaming(StreamingProcessor processor, ParsedCommand command) {
+    if (command.isEncode()) {
+      File source = FileReader.resolve(ImageType.Source, "source");
+      if (!processor.shouldStream(source)) {
+        return false;
+      }
+      File output;
+      if (command.isPrepare().isPresent() && command.isPrepare().get()) {
+        output = FileReader.getFile(ImageType.Decode, "decode.png");
+      } else if (command.isPrepare().isPresent() && command.getPath().isPresent()) {
+        output = FileReader.getFile(command.getPath().get());
+      } else if (command.isPrepare().isEmpty()) {
+        output = FileReader.getFile(ImageType.Output, "output.png");
+      } else { // prepare off without a path: execute writes nothing either
+        return true;
+      }
+      File encode = FileReader.resolve(ImageType.Encode, "encode");
+      // strips are read through ImageIO and written as PNG
+      if (RawImageFile.isRaw(encode) || RawImageFile.isRaw(output)) {
+        return false;
+      }
+      processor.encode(source, encode, output);
+    } else {
+      File decode = FileReader.resolve(ImageType.Decode, "decode");
+      if (!processor.shouldStream(decode)) {
+        return false;
+      }
+      processor.decode(decode, FileReader.getFile(ImageType.Output, "output.png"));
+    }
+    return true;
+  }
 }
\ No newline at end of file
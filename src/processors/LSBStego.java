@@ -1,13 +1,36 @@
 package processors;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import filereader.FileReader;
 import filereader.Image;
+import filereader.RawImageFile;
+import filereader.Resampler;
+import filereader.StripReader;
+import util.Parallel;
 
-public class LSBStego implements ImageProcessor {
+public class LSBStego extends StreamingProcessor {
   /** static instance */
   private static LSBStego instance = new LSBStego(4);
 
   /** noise threshold for encode/decode (see constructor note) */
   private int threshold;
+  /** marks an image carrying a byte payload ("SBIT") */
+  private static final int PAYLOAD_MAGIC = 0x53424954;
+  /** payload header: magic, bits per channel and payload length */
+  private static final int HEADER_BYTES = 4 + 1 + 8;
+  /** pixels holding the header, written at one bit per channel */
+  static final int HEADER_PIXELS = (HEADER_BYTES * 8 + 2) / 3;
+  /** bytes read or written per call on payload streams */
+  private static final int PAYLOAD_CHUNK = 1 << 16;
+  /** pixels compared and rewritten together on update, a multiple of 8 so a tile holds whole bytes */
+  static final int TILE_PIXELS = 1 << 12;
 
   /**
    * Constructs a new {@code BitNoiseProcessor}
@@ -63,11 +86,13 @@ public class LSBStego implements ImageProcessor {
   }
 
   /**
-   * See {@link LSBStego#encode(Image, Image)}.
+   * See {@link LSBStego#encode(Image, Image)}. Uses {@code noiseThreshold}
+   * instead of this processor's threshold, so concurrent jobs can use
+   * different thresholds.
    * @param noiseThreshold Number of rightmost bits of
    * {@code source} to replace.
    */
-  private Image encode(Image source, Image encode, int noiseThreshold) {
+  public Image encode(Image source, Image encode, int noiseThreshold) {
     // scale images
     if (source.width != encode.width || source.height != encode.height) {
       encode = Image.scale(encode, source.width, source.height);
@@ -75,65 +100,580 @@ public class LSBStego implements ImageProcessor {
     // cap noise threshold to reasonable value
     noiseThreshold = Math.max(Math.min(noiseThreshold, 5), 1);
     // storage for output pixels
-    int[][] r = new int[source.r.length][source.r[0].length];
-    int[][] g = new int[source.g.length][source.g[0].length];
-    int[][] b = new int[source.b.length][source.b[0].length];
-    // iterate through source image
-    for (int y = 0; y < source.r.length; y++) {
-      for (int x = 0; x < source.r[y].length; x++) {
-        // truncate least significant bits of source
-        int rTruncated = source.r[y][x] >> noiseThreshold;
-        int gTruncated = source.g[y][x] >> noiseThreshold;
-        int bTruncated = source.b[y][x] >> noiseThreshold;
-        // take most significant bits of encode
-        int rSignificant = encode.r[y][x] >> (8 - noiseThreshold);
-        int gSignificant = encode.g[y][x] >> (8 - noiseThreshold);
-        int bSignificant = encode.b[y][x] >> (8 - noiseThreshold);
-        // concatenate bits
-        int rEncoded = rTruncated * (int) (Math.pow(2, noiseThreshold)) + rSignificant;
-        int gEncoded = gTruncated * (int) (Math.pow(2, noiseThreshold)) + gSignificant;
-        int bEncoded = bTruncated * (int) (Math.pow(2, noiseThreshold)) + bSignificant;
-        // store new pixel
-        r[y][x] = rEncoded;
-        g[y][x] = gEncoded;
-        b[y][x] = bEncoded;
-      }
-    }
+    int[] pixels = new int[source.width * source.height];
+    encodePixels(source.getPixels(), encode.getPixels(), pixels, noiseThreshold);
     // create output
-    Image output = new Image(r, g, b);
+    Image output = new Image(source.width, source.height, pixels);
     return output;
   }
 
   /**
-   * See {@link LSBStego#decode(Image)}.
+   * See {@link LSBStego#decode(Image)}. Uses {@code noiseThreshold}
+   * instead of this processor's threshold.
    * @param noiseThreshold Number of rightmost bits
    * to take as encoded data.
    */
-  private Image decode(Image decode, int noiseThreshold) {
+  public Image decode(Image decode, int noiseThreshold) {
     // cap noise threshold
     noiseThreshold = Math.max(Math.min(noiseThreshold, 5), 1);
     // storage for decoded pixels
-    int[][] r = new int[decode.r.length][decode.r[0].length];
-    int[][] g = new int[decode.g.length][decode.g[0].length];
-    int[][] b = new int[decode.b.length][decode.b[0].length];
-    // iterate over pixels
-    for (int y = 0; y < decode.r.length; y++) {
-      for (int x = 0; x < decode.r[0].length; x++) {
-        // take end bits of decode
-        int rDecoded = decode.r[y][x] << (8 - noiseThreshold) & 255;
-        int gDecoded = decode.g[y][x] << (8 - noiseThreshold) & 255;
-        int bDecoded = decode.b[y][x] << (8 - noiseThreshold) & 255;
-        // store new pixel
-        r[y][x] = rDecoded;
-        g[y][x] = gDecoded;
-        b[y][x] = bDecoded;
-      }
-    }
+    int[] pixels = new int[decode.width * decode.height];
+    decodePixels(decode.getPixels(), pixels, noiseThreshold);
     // create output
-    Image decoded = new Image(r, g, b);
+    Image decoded = new Image(decode.width, decode.height, pixels);
     return decoded;
   }
 
+  /**
+   * Get how many payload bytes {@link LSBStego#encodeBytes(Image, InputStream, int)}
+   * can hide in an image.
+   * @param width Image width.
+   * @param height Image height.
+   * @param bitsPerChannel Bits of each channel to use for the payload.
+   * @return Capacity in bytes, 0 if the image cannot even hold the header.
+   */
+  public static long payloadCapacity(int width, int height, int bitsPerChannel) {
+    long pixels = (long) width * height - HEADER_PIXELS;
+    return Math.max(0, pixels * 3 * checkBits(bitsPerChannel) / 8);
+  }
+
+  /**
+   * Hides the bytes of {@code payload}, read until end of stream, in the
+   * {@code bitsPerChannel} least significant bits of each channel of
+   * {@code source}. The payload is read in chunks and written straight into
+   * the output pixels, so it is never held in memory whole and its length
+   * does not need to be known in advance. A small header (written at one
+   * bit per channel in the first pixels) records the length and
+   * {@code bitsPerChannel}, so {@link LSBStego#decodeBytes(Image, OutputStream)}
+   * needs neither.
+   * @param source {@link Image} to conceal the payload.
+   * @param payload Bytes to hide.
+   * @param bitsPerChannel Bits of each channel to replace, 1 to 8.
+   * @return new {@link Image} with the payload hidden.
+   * @throws IOException if {@code payload} cannot be read.
+   * @throws IllegalArgumentException if {@code bitsPerChannel} is out of
+   * range or the payload is longer than
+   * {@link LSBStego#payloadCapacity(int, int, int)}.
+   */
+  public Image encodeBytes(Image source, InputStream payload, int bitsPerChannel) throws IOException {
+    long capacity = payloadCapacity(source.width, source.height, bitsPerChannel);
+    int[] pixels = source.getPixels().clone();
+    ChannelBits body = new ChannelBits(pixels, HEADER_PIXELS, bitsPerChannel);
+    byte[] chunk = new byte[PAYLOAD_CHUNK];
+    long length = 0;
+    int read;
+    while ((read = payload.read(chunk)) != -1) {
+      length += read;
+      if (length > capacity) {
+        throw new IllegalArgumentException("payload is larger than the image's capacity of "
+            + capacity + " bytes at " + bitsPerChannel + " bits per channel");
+      }
+      body.write(chunk, read);
+    }
+    body.flush();
+    // header last, once the length is known
+    byte[] header = new byte[HEADER_BYTES];
+    writeLong(header, 0, PAYLOAD_MAGIC, 4);
+    header[4] = (byte) bitsPerChannel;
+    writeLong(header, 5, length, 8);
+    ChannelBits head = new ChannelBits(pixels, 0, 1);
+    head.write(header, HEADER_BYTES);
+    head.flush();
+    return new Image(source.width, source.height, pixels);
+  }
+
+  /**
+   * Extracts a payload hidden by
+   * {@link LSBStego#encodeBytes(Image, InputStream, int)}, writing it to
+   * {@code output} in chunks.
+   * @param decode {@link Image} with a payload hidden.
+   * @param output Stream to write the payload to. It is not closed.
+   * @return Number of bytes written.
+   * @throws IOException if {@code output} cannot be written.
+   * @throws IllegalArgumentException if {@code decode} has no valid payload
+   * header.
+   */
+  public long decodeBytes(Image decode, OutputStream output) throws IOException {
+    return decodeBytes(decode, 0, payloadLength(decode), output);
+  }
+
+  /**
+   * Extracts bytes {@code [from, to)} of a payload hidden by
+   * {@link LSBStego#encodeBytes(Image, InputStream, int)}. Every pixel after
+   * the header holds the same number of payload bits, so the header is all
+   * the index needed: only the header and the pixels holding the requested
+   * bytes are read, through {@link Image#copyPixels(int, int[], int, int)},
+   * so a raw image file is read in place and the cost follows the size of
+   * the request rather than of the image.
+   * @param decode {@link Image} with a payload hidden.
+   * @param from First byte to extract.
+   * @param to Byte after the last to extract.
+   * @param output Stream to write the bytes to. It is not closed.
+   * @return Number of bytes written.
+   * @throws IOException if {@code output} cannot be written.
+   * @throws IllegalArgumentException if {@code decode} has no valid payload
+   * header or {@code [from, to)} is not within the payload.
+   */
+  public long decodeBytes(Image decode, long from, long to, OutputStream output) throws IOException {
+    Header header = readHeader(decode);
+    if (from < 0 || from > to || to > header.length) {
+      throw new IllegalArgumentException("range " + from + " to " + to + " is outside the payload of "
+          + header.length + " bytes");
+    }
+    int pixelBits = 3 * header.bits;
+    long firstBit = from * 8;
+    int firstPixel = HEADER_PIXELS + (int) (firstBit / pixelBits);
+    int endPixel = HEADER_PIXELS + (int) ((to * 8 + pixelBits - 1) / pixelBits);
+    ChannelBits body = new ChannelBits(decode, firstPixel, endPixel, header.bits);
+    body.skip((int) (firstBit % pixelBits));
+    byte[] chunk = new byte[(int) Math.min(PAYLOAD_CHUNK, Math.max(1, to - from))];
+    for (long remaining = to - from; remaining > 0; ) {
+      int count = (int) Math.min(chunk.length, remaining);
+      body.read(chunk, count);
+      output.write(chunk, 0, count);
+      remaining -= count;
+    }
+    return to - from;
+  }
+
+  /**
+   * Replaces the payload hidden in {@code encoded} by
+   * {@link LSBStego#encodeBytes(Image, InputStream, int)} with
+   * {@code payload}, at the same bits per channel. See
+   * {@link LSBStego#updateBytes(File, InputStream)}.
+   * @param encoded {@link Image} with a payload hidden.
+   * @param payload New payload.
+   * @return new {@link Image} with the new payload hidden.
+   * @throws IOException if {@code payload} cannot be read.
+   * @throws IllegalArgumentException if {@code encoded} has no valid payload
+   * header or the new payload does not fit.
+   */
+  public Image updateBytes(Image encoded, InputStream payload) throws IOException {
+    return updateBytes(encoded, changedTiles(encoded, payload));
+  }
+
+  /**
+   * Replaces the payload hidden in an image file by
+   * {@link LSBStego#encodeBytes(Image, InputStream, int)} with
+   * {@code payload}, rewriting only the runs of {@code TILE_PIXELS} pixels
+   * whose bits change. A raw image file ({@code .sraw}) is edited in place,
+   * so only the changed tiles are written to disk and a small edit to a
+   * large payload costs little more than reading it; other formats are
+   * read and written whole. Bits that held the old payload past the end of
+   * the new one are cleared. The new payload is checked against the
+   * capacity before anything is written.
+   * @param carrier Image file with a payload hidden.
+   * @param payload New payload.
+   * @return Number of pixels rewritten.
+   * @throws IOException if {@code carrier} or {@code payload} cannot be
+   * read, or {@code carrier} cannot be written.
+   * @throws IllegalArgumentException if {@code carrier} has no valid payload
+   * header or the new payload does not fit.
+   */
+  public long updateBytes(File carrier, InputStream payload) throws IOException {
+    if (RawImageFile.isRaw(carrier)) {
+      try (RawImageFile.Editor editor = RawImageFile.edit(carrier)) {
+        List<Tile> tiles = changedTiles(editor.image(), payload);
+        for (Tile tile : tiles) {
+          editor.writePixels(tile.start, tile.pixels, 0, tile.pixels.length);
+        }
+        return rewrittenPixels(tiles);
+      }
+    }
+    Image encoded = FileReader.readImage(carrier);
+    if (encoded == null) {
+      throw new IOException("could not read " + carrier);
+    }
+    List<Tile> tiles = changedTiles(encoded, payload);
+    if (!tiles.isEmpty() && !FileReader.writeImage(updateBytes(encoded, tiles), carrier)) {
+      throw new IOException("could not write " + carrier);
+    }
+    return rewrittenPixels(tiles);
+  }
+
+  /** A run of pixels to rewrite. */
+  private static class Tile {
+    /** index of the first pixel */
+    final int start;
+    /** new pixels */
+    final int[] pixels;
+
+    Tile(int start, int[] pixels) {
+      this.start = start;
+      this.pixels = pixels;
+    }
+  }
+
+  /** {@code encoded} with {@code tiles} written over it. */
+  private static Image updateBytes(Image encoded, List<Tile> tiles) {
+    int[] pixels = encoded.getPixels().clone();
+    for (Tile tile : tiles) {
+      System.arraycopy(tile.pixels, 0, pixels, tile.start, tile.pixels.length);
+    }
+    return new Image(encoded.width, encoded.height, pixels);
+  }
+
+  private static long rewrittenPixels(List<Tile> tiles) {
+    long pixels = 0;
+    for (Tile tile : tiles) {
+      pixels += tile.pixels.length;
+    }
+    return pixels;
+  }
+
+  /**
+   * Works out which tiles of {@code encoded} change when its payload is
+   * replaced by {@code payload}, comparing tile by tile as the new payload
+   * is read. Only changed tiles are kept, so memory follows the size of the
+   * change.
+   * @return Changed tiles, the header last if it changes.
+   */
+  private static List<Tile> changedTiles(Image encoded, InputStream payload) throws IOException {
+    Header header = readHeader(encoded);
+    int bits = header.bits;
+    int tileBytes = TILE_PIXELS * 3 * bits / 8;
+    long capacity = payloadCapacity(encoded.width, encoded.height, bits);
+    int totalPixels = encoded.width * encoded.height;
+    List<Tile> changed = new ArrayList<>();
+    byte[] bytes = new byte[tileBytes];
+    byte[] zeros = new byte[tileBytes];
+    int[] current = new int[TILE_PIXELS];
+    long length = 0;
+    for (long tileByte = 0; ; tileByte += tileBytes) {
+      int read = payload.readNBytes(bytes, 0, tileBytes);
+      length += read;
+      if (length > capacity) {
+        throw new IllegalArgumentException("payload is larger than the image's capacity of "
+            + capacity + " bytes at " + bits + " bits per channel");
+      }
+      // old payload bytes in this tile past the end of the new one
+      int stale = (int) Math.max(0, Math.min(tileBytes, header.length - tileByte) - read);
+      if (read == 0 && stale == 0) {
+        break;
+      }
+      int start = HEADER_PIXELS + (int) (tileByte / tileBytes) * TILE_PIXELS;
+      int count = Math.min(TILE_PIXELS, totalPixels - start);
+      encoded.copyPixels(start, current, 0, count);
+      int[] updated = Arrays.copyOf(current, count);
+      ChannelBits tile = new ChannelBits(updated, 0, bits);
+      tile.write(bytes, read);
+      tile.write(zeros, stale);
+      tile.flush();
+      if (!Arrays.equals(current, 0, count, updated, 0, count)) {
+        changed.add(new Tile(start, updated));
+      }
+    }
+    if (length != header.length) {
+      byte[] head = new byte[HEADER_BYTES];
+      writeLong(head, 0, PAYLOAD_MAGIC, 4);
+      head[4] = (byte) bits;
+      writeLong(head, 5, length, 8);
+      int[] headerPixels = new int[HEADER_PIXELS];
+      encoded.copyPixels(0, headerPixels, 0, HEADER_PIXELS);
+      ChannelBits headerBits = new ChannelBits(headerPixels, 0, 1);
+      headerBits.write(head, HEADER_BYTES);
+      headerBits.flush();
+      changed.add(new Tile(0, headerPixels));
+    }
+    return changed;
+  }
+
+  /**
+   * Get the length of a payload hidden by
+   * {@link LSBStego#encodeBytes(Image, InputStream, int)}, reading only its
+   * header.
+   * @param decode {@link Image} with a payload hidden.
+   * @return Payload length in bytes.
+   * @throws IllegalArgumentException if {@code decode} has no valid payload
+   * header.
+   */
+  public static long payloadLength(Image decode) {
+    return readHeader(decode).length;
+  }
+
+  /** Bits per channel and length of a hidden byte payload. */
+  private static class Header {
+    final int bits;
+    final long length;
+
+    Header(int bits, long length) {
+      this.bits = bits;
+      this.length = length;
+    }
+  }
+
+  private static Header readHeader(Image decode) {
+    if ((long) decode.width * decode.height < HEADER_PIXELS) {
+      throw new IllegalArgumentException("image is too small to hold a payload");
+    }
+    byte[] header = new byte[HEADER_BYTES];
+    new ChannelBits(decode, 0, HEADER_PIXELS, 1).read(header, HEADER_BYTES);
+    int bitsPerChannel = header[4];
+    long length = readLong(header, 5, 8);
+    if (readLong(header, 0, 4) != PAYLOAD_MAGIC || bitsPerChannel < 1 || bitsPerChannel > 8
+        || length < 0 || length > payloadCapacity(decode.width, decode.height, bitsPerChannel)) {
+      throw new IllegalArgumentException("image does not hold a byte payload");
+    }
+    return new Header(bitsPerChannel, length);
+  }
+
+  private static int checkBits(int bitsPerChannel) {
+    if (bitsPerChannel < 1 || bitsPerChannel > 8) {
+      throw new IllegalArgumentException("bits per channel must be 1 to 8");
+    }
+    return bitsPerChannel;
+  }
+
+  /** Writes the low {@code count} bytes of {@code value}, big-endian. */
+  private static void writeLong(byte[] bytes, int offset, long value, int count) {
+    for (int i = 0; i < count; i++) {
+      bytes[offset + i] = (byte) (value >>> (8 * (count - 1 - i)));
+    }
+  }
+
+  /** Reads {@code count} big-endian bytes as an unsigned value. */
+  private static long readLong(byte[] bytes, int offset, int count) {
+    long value = 0;
+    for (int i = 0; i < count; i++) {
+      value = value << 8 | (bytes[offset + i] & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Sequential access to the low bits of each channel of packed pixels,
+   * treated as one bit stream: red, green then blue of each pixel in
+   * row-major order, most significant bit first. Writes go to an array in
+   * place; reads come from an image a window of pixels at a time.
+   */
+  private static class ChannelBits {
+    /** image read from, {@code null} if writing to {@code pixels} */
+    private final Image source;
+    /** pixel after the last one read from {@code source} */
+    private final int endPixel;
+    /** packed pixels written in place, or the current window of {@code source} */
+    private int[] pixels;
+    /** index in {@code source} of {@code pixels[0]} */
+    private int windowStart;
+    /** bits used in each channel */
+    private final int bits;
+    /** mask of the used bits of a channel */
+    private final int mask;
+    /** mask of the used bits of all three channels of a pixel */
+    private final int pixelMask;
+    /** next pixel */
+    private int pixel;
+    /** shift of the next channel within its pixel when flushing: 16, 8 or 0 */
+    private int shift = 16;
+    /** bits not yet written, or read but not yet returned, right-aligned */
+    private long buffer;
+    /** number of bits in {@code buffer} */
+    private int buffered;
+
+    /** Writes to {@code pixels} from {@code firstPixel} on. */
+    ChannelBits(int[] pixels, int firstPixel, int bits) {
+      this.source = null;
+      this.endPixel = pixels.length;
+      this.pixels = pixels;
+      this.bits = checkBits(bits);
+      this.mask = (1 << bits) - 1;
+      this.pixelMask = mask * 0x010101;
+      this.pixel = firstPixel;
+    }
+
+    /** Reads pixels {@code [firstPixel, endPixel)} of {@code source}. */
+    ChannelBits(Image source, int firstPixel, int endPixel, int bits) {
+      this.source = source;
+      this.endPixel = endPixel;
+      this.pixels = new int[0];
+      this.windowStart = firstPixel;
+      this.bits = checkBits(bits);
+      this.mask = (1 << bits) - 1;
+      this.pixelMask = mask * 0x010101;
+    }
+
+    /** Writes {@code bytes[0, count)}. */
+    void write(byte[] bytes, int count) {
+      for (int i = 0; i < count; i++) {
+        buffer = buffer << 8 | (bytes[i] & 0xFF);
+        buffered += 8;
+        // a whole pixel at a time; flush writes what is left over
+        while (buffered >= 3 * bits) {
+          buffered -= 3 * bits;
+          int value = (int) (buffer >>> buffered);
+          pixels[pixel] = pixels[pixel] & ~pixelMask | (value >>> (2 * bits) & mask) << 16
+              | (value >>> bits & mask) << 8 | value & mask;
+          pixel++;
+        }
+      }
+    }
+
+    /**
+     * Writes any buffered bits, padded with zeros to a whole channel. Ends
+     * writing: bits are only written a channel at a time from here on.
+     */
+    void flush() {
+      while (buffered >= bits) {
+        buffered -= bits;
+        put((int) (buffer >>> buffered) & mask);
+      }
+      if (buffered > 0) {
+        put((int) (buffer << (bits - buffered)) & mask);
+        buffered = 0;
+      }
+    }
+
+    /** Reads {@code count} bytes into {@code bytes[0, count)}. */
+    void read(byte[] bytes, int count) {
+      for (int i = 0; i < count; i++) {
+        while (buffered < 8) {
+          readPixel();
+        }
+        buffered -= 8;
+        bytes[i] = (byte) (buffer >>> buffered);
+      }
+    }
+
+    /** Skips the first {@code count} bits of the next pixel, less than a pixel's worth. */
+    void skip(int count) {
+      if (count > 0) {
+        readPixel();
+        buffered -= count;
+      }
+    }
+
+    /** Buffers the bits of the next pixel, all three channels at once. */
+    private void readPixel() {
+      if (pixel == pixels.length) {
+        windowStart += pixels.length;
+        int length = Math.min(PAYLOAD_CHUNK, endPixel - windowStart);
+        if (pixels.length != length) {
+          pixels = new int[length];
+        }
+        source.copyPixels(windowStart, pixels, 0, length);
+        pixel = 0;
+      }
+      int value = pixels[pixel++];
+      buffer = buffer << (3 * bits) | (value >>> 16 & mask) << (2 * bits)
+          | (value >>> 8 & mask) << bits | value & mask;
+      buffered += 3 * bits;
+    }
+
+    private void put(int value) {
+      pixels[pixel] = pixels[pixel] & ~(mask << shift) | value << shift;
+      advance();
+    }
+
+    private void advance() {
+      shift -= 8;
+      if (shift < 0) {
+        shift = 16;
+        pixel++;
+      }
+    }
+  }
+
+  /**
+   * Encodes the packed pixels of {@code encode} into those of {@code source}.
+   * See {@link LSBStego#encode(Image, Image)}.
+   * @param source Packed source pixels.
+   * @param encode Packed pixels to hide, same length as {@code source}.
+   * @param output Storage for the encoded pixels.
+   * @param noiseThreshold Number of rightmost bits of {@code source} to replace.
+   */
+  private static void encodePixels(int[] source, int[] encode, int[] output, int noiseThreshold) {
+    // all three channels at once, see PackedLSB
+    Parallel.forBands(source.length, 1, (start, end) ->
+        PackedLSB.encode(source, encode, output, start, end, noiseThreshold));
+  }
+
+  /**
+   * Decodes packed pixels. See {@link LSBStego#decode(Image)}.
+   * @param decode Packed pixels with an image encoded.
+   * @param output Storage for the decoded pixels.
+   * @param noiseThreshold Number of rightmost bits to take as encoded data.
+   */
+  private static void decodePixels(int[] decode, int[] output, int noiseThreshold) {
+    Parallel.forBands(decode.length, 1, (start, end) ->
+        PackedLSB.decode(decode, output, start, end, noiseThreshold));
+  }
+
+  /**
+   * Streaming version of {@link LSBStego#encode(Image, Image)} for images
+   * too large to hold in memory. The source and encode images are read and
+   * encoded in horizontal strips of about {@link LSBStego#getStripPixels()}
+   * pixels, and each strip is written to {@code output} as a PNG before the
+   * next one is read. The output is identical to the in-memory encode.
+   * @param source Image file to conceal the encoded data.
+   * @param encode Image file whose data to encode.
+   * @param output PNG file to write.
+   * @return {@code true} if the output was written.
+   */
+  @Override
+  public boolean encode(File source, File encode, File output) {
+    StripReader sourceReader = FileReader.openImage(source);
+    StripReader encodeReader = FileReader.openImage(encode);
+    try {
+      if (sourceReader == null || encodeReader == null) {
+        return false;
+      }
+      int width = sourceReader.getWidth();
+      int height = sourceReader.getHeight();
+      int encodeWidth = encodeReader.getWidth();
+      int encodeHeight = encodeReader.getHeight();
+      int noiseThreshold = Math.max(Math.min(threshold, 5), 1);
+      return FileReader.writeImage(width, height, stripHeight(width), (y, rows) -> {
+        Image sourceStrip = FileReader.readStrip(sourceReader, y, rows);
+        Image encodeStrip;
+        if (encodeWidth == width && encodeHeight == height) {
+          encodeStrip = FileReader.readStrip(encodeReader, y, rows);
+        } else { // scale only the rows of encode this strip needs
+          int[] band = Resampler.sourceRows(Resampler.Filter.BILINEAR, encodeHeight, height, y, y + rows);
+          encodeStrip = Resampler.resampleBand(FileReader.readStrip(encodeReader, band[0], band[1] - band[0]),
+              band[0], encodeHeight, width, height, y, y + rows, Resampler.Filter.BILINEAR);
+        }
+        int[] pixels = new int[width * rows];
+        encodePixels(sourceStrip.getPixels(), encodeStrip.getPixels(), pixels, noiseThreshold);
+        return new Image(width, rows, pixels);
+      }, output);
+    } finally {
+      FileReader.closeImage(sourceReader);
+      FileReader.closeImage(encodeReader);
+    }
+  }
+
+  /**
+   * Streaming version of {@link LSBStego#decode(Image)}. See
+   * {@link LSBStego#encode(File, File, File)}.
+   * @param decode Image file with image encoded.
+   * @param output PNG file to write the decoded image to.
+   * @return {@code true} if the output was written.
+   */
+  @Override
+  public boolean decode(File decode, File output) {
+    StripReader decodeReader = FileReader.openImage(decode);
+    try {
+      if (decodeReader == null) {
+        return false;
+      }
+      int width = decodeReader.getWidth();
+      int height = decodeReader.getHeight();
+      int noiseThreshold = Math.max(Math.min(threshold, 5), 1);
+      return FileReader.writeImage(width, height, stripHeight(width), (y, rows) -> {
+        int[] pixels = new int[width * rows];
+        decodePixels(FileReader.readStrip(decodeReader, y, rows).getPixels(), pixels, noiseThreshold);
+        return new Image(width, rows, pixels);
+      }, output);
+    } finally {
+      FileReader.closeImage(decodeReader);
+    }
+  }
+
+  /** Rows per strip so a strip holds about {@link LSBStego#getStripPixels()} pixels. */
+  private int stripHeight(int width) {
+    return Math.max(1, getStripPixels() / width);
+  }
+
   /**
    * Sets this processor's noise threshold.
    * @param threshold New threshold.
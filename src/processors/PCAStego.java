@@ -1,15 +1,19 @@
 package processors;
 
+import java.io.File;
 import java.io.FileWriter;
 
 import filereader.FileReader;
 import filereader.Image;
+import filereader.PCAModel;
 import filereader.FileReader.ImageType;
 
 public class PCAStego implements ImageProcessor {
 
     private static PCAStego instance = new PCAStego();
     private static double scale = 0.01;
+    // write the per-component debug images on encode unless a job says otherwise
+    private static volatile boolean debug = false;
 
     private PCAStego() {
         PCAStego.instance = this;
@@ -21,54 +25,57 @@ public class PCAStego implements ImageProcessor {
 
     @Override
     public Image decode(Image decode) {
-        double[][] pcaDecode = Image.applyTransformationMatrix(decode);
-        double[] means = Image.getMeans(Image.getImageData(decode));
+        PCAModel model = PCAModel.fit(decode);
+        double[] payload = model.project(decode, 2);
 
-        for (int x = 0; x < pcaDecode.length; x++) {
-            pcaDecode[x][0] = pcaDecode[x][2] / scale;
-            pcaDecode[x][1] = 0;
-            pcaDecode[x][2] = 0;
+        for (int x = 0; x < payload.length; x++) {
+            payload[x] /= scale;
         }
 
-        return Image.imageFromTransform(pcaDecode,
-                Image.getTransformationMatrix(decode), means, decode.width,
-                decode.height);
+        return model.reconstruct(new double[][] { payload, null, null }, decode.width, decode.height);
+    }
+
+    // Whether encode writes pcaHigh/pcaMid/pcaLow.png to the debug folder.
+    // Each costs a reconstruction and a PNG encode, so it is off by default.
+    public static void setDebug(boolean debug) {
+        PCAStego.debug = debug;
+    }
+
+    public static boolean isDebug() {
+        return debug;
     }
 
     @Override
     public Image encode(Image source, Image encode) {
+        return encode(source, encode, debug ? FileReader.getFile(ImageType.Debug, "pca") : null);
+    }
+
+    // Encodes, writing the debug images to debugFolder, or skipping them if
+    // debugFolder is null
+    public Image encode(Image source, Image encode, File debugFolder) {
         // return Image.applyTransformation(source);
-        double[][] pcaSource = Image.applyTransformationMatrix(source);
-        double[][] pcaEncode = Image.applyTransformationMatrix(encode);
+        PCAModel model = PCAModel.fit(source);
+        double[][] pcaSource = model.project(source);
+        double[] pcaEncode = PCAModel.fit(encode).project(encode, 0);
 
-        double[] means = Image.getMeans(Image.getImageData(source));
+        if (debugFolder != null) {
+            FileReader.writeImage(model.reconstruct(new double[][] { pcaSource[0], null, null },
+                    source.width, source.height), new File(debugFolder, "pcaHigh.png"));
 
-        double[][] pcaHigh = new double[pcaSource.length][3];
-        double[][] pcaMid = new double[pcaSource.length][3];
-        double[][] pcaLow = new double[pcaSource.length][3];
+            FileReader.writeImage(model.reconstruct(new double[][] { null, pcaSource[1], null },
+                    source.width, source.height), new File(debugFolder, "pcaMid.png"));
 
-        for (int x = 0; x < pcaSource.length; x++) {
-            pcaHigh[x][0] = pcaSource[x][0];
-            pcaMid[x][1] = pcaSource[x][1];
-            pcaLow[x][2] = pcaSource[x][2];
-            pcaSource[x][2] = pcaEncode[x][0] * scale;
+            FileReader.writeImage(model.reconstruct(new double[][] { null, null, pcaSource[2] },
+                    source.width, source.height), new File(debugFolder, "pcaLow.png"));
         }
 
-        FileReader.writeImage(Image.toBufferedImage(Image.imageFromTransform(pcaHigh,
-                Image.getTransformationMatrix(source), means, source.width,
-                source.height)), ImageType.Debug, "pca/pcaHigh.png");
-
-        FileReader.writeImage(Image.toBufferedImage(Image.imageFromTransform(pcaMid,
-                Image.getTransformationMatrix(source), means, source.width,
-                source.height)), ImageType.Debug, "pca/pcaMid.png");
-
-        FileReader.writeImage(Image.toBufferedImage(Image.imageFromTransform(pcaLow,
-                Image.getTransformationMatrix(source), means, source.width,
-                source.height)), ImageType.Debug, "pca/pcaLow.png");
+        // the weakest component carries the payload's strongest
+        double[] low = pcaSource[2];
+        for (int x = 0; x < low.length; x++) {
+            low[x] = pcaEncode[x] * scale;
+        }
 
-        return Image.imageFromTransform(pcaSource,
-                Image.getTransformationMatrix(source), means, source.width,
-                source.height);
+        return model.reconstruct(pcaSource, source.width, source.height);
     }
 
 }
@@ -0,0 +1,58 @@
+package processors;
+
+/**
+ * LSB kernels over packed {@code 0xRRGGBB} pixels that work on all three
+ * channels of a pixel at once with a single mask and shift.
+ * <p>
+ * With the channel masks repeated in each byte, shifting a whole pixel moves
+ * every channel's bits together, and masking drops whatever crossed into the
+ * neighbouring channel. Each loop body is then a few independent
+ * {@code int} operations with no per-channel unpacking or branches, which
+ * the JIT can unroll and vectorize as it stands; moving to the JDK Vector API
+ * once it leaves incubation only replaces the loop bodies.
+ */
+final class PackedLSB {
+  /** one in the lowest bit of each channel */
+  private static final int CHANNEL_ONES = 0x010101;
+
+  private PackedLSB() {
+  }
+
+  /**
+   * Replaces the {@code bits} lowest bits of each channel of
+   * {@code source[from, to)} with the {@code bits} highest bits of the same
+   * channel of {@code encode}. The arrays share one index so the JIT can
+   * vectorize the loop; offset views of different arrays defeat it.
+   * @param source Packed source pixels.
+   * @param encode Packed pixels to hide.
+   * @param output Storage for the encoded pixels.
+   * @param from First pixel.
+   * @param to Pixel after the last.
+   * @param bits Bits per channel to replace, 1 to 7.
+   */
+  static void encode(int[] source, int[] encode, int[] output, int from, int to, int bits) {
+    int keep = CHANNEL_ONES * ((0xFF << bits) & 0xFF);
+    int take = CHANNEL_ONES * ((1 << bits) - 1);
+    int shift = 8 - bits;
+    for (int i = from; i < to; i++) {
+      output[i] = (source[i] & keep) | ((encode[i] >>> shift) & take);
+    }
+  }
+
+  /**
+   * Moves the {@code bits} lowest bits of each channel of
+   * {@code decode[from, to)} to the top of the channel, leaving the rest 0.
+   * @param decode Packed pixels with an image encoded.
+   * @param output Storage for the decoded pixels.
+   * @param from First pixel.
+   * @param to Pixel after the last.
+   * @param bits Bits per channel that were replaced, 1 to 7.
+   */
+  static void decode(int[] decode, int[] output, int from, int to, int bits) {
+    int shift = 8 - bits;
+    int top = CHANNEL_ONES * ((0xFF << shift) & 0xFF);
+    for (int i = from; i < to; i++) {
+      output[i] = (decode[i] << shift) & top;
+    }
+  }
+}
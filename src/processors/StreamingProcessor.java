@@ -0,0 +1,100 @@
+package processors;
+
+import java.io.File;
+
+import filereader.FileReader;
+import filereader.Image;
+import filereader.RawImageFile;
+import filereader.StripReader;
+
+/**
+ * An {@link ImageProcessor} that can also encode and decode image files
+ * strip by strip, for images too large to hold in memory. Holds the strip
+ * size and the size above which the CLI streams, shared by every streaming
+ * processor.
+ */
+public abstract class StreamingProcessor implements ImageProcessor {
+  /** approximate pixels per strip when streaming */
+  private int stripPixels = 1 << 22;
+  /** image size (pixels) above which the CLI streams instead of loading */
+  private long streamingThreshold = 1L << 26;
+
+  /**
+   * Streaming version of {@link ImageProcessor#encode(Image, Image)}.
+   * @param source Image file to conceal the encoded data.
+   * @param encode Image file whose data to encode.
+   * @param output PNG file to write.
+   * @return {@code true} if the output was written.
+   */
+  public abstract boolean encode(File source, File encode, File output);
+
+  /**
+   * Streaming version of {@link ImageProcessor#decode(Image)}.
+   * @param decode Image file with image encoded.
+   * @param output PNG file to write the decoded image to.
+   * @return {@code true} if the output was written.
+   */
+  public abstract boolean decode(File decode, File output);
+
+  /**
+   * Whether an image file is large enough (more than
+   * {@link StreamingProcessor#getStreamingThreshold()} pixels) that it
+   * should be processed with the streaming methods.
+   * @param file Image file.
+   * @return {@code true} if the image should be streamed.
+   */
+  public boolean shouldStream(File file) {
+    if (RawImageFile.isRaw(file)) { // already read in place from a mapping
+      return false;
+    }
+    StripReader reader = FileReader.openImage(file);
+    if (reader == null) {
+      return false;
+    }
+    try {
+      return (long) reader.getWidth() * reader.getHeight() > streamingThreshold;
+    } finally {
+      FileReader.closeImage(reader);
+    }
+  }
+
+  /**
+   * Sets the approximate number of pixels per strip when streaming.
+   * Processors may round it to strips of whole blocks.
+   * <p>
+   * Non-interlaced 8-bit RGB, RGBA and palette PNGs (what this tool writes)
+   * are decoded once, top to bottom, so the strip size only bounds memory.
+   * Any other input is read through ImageIO source regions, which decode
+   * every row above a strip again for each strip: about
+   * {@code height / stripRows} decodes of half the image, quadratic in the
+   * height, so give such inputs large strips.
+   * @param stripPixels New strip size.
+   */
+  public void setStripPixels(int stripPixels) {
+    this.stripPixels = Math.max(1, stripPixels);
+  }
+
+  /**
+   * Get the approximate number of pixels per strip when streaming.
+   * @return Strip size.
+   */
+  public int getStripPixels() {
+    return stripPixels;
+  }
+
+  /**
+   * Sets the image size, in pixels, above which the CLI streams images.
+   * @param streamingThreshold New threshold.
+   */
+  public void setStreamingThreshold(long streamingThreshold) {
+    this.streamingThreshold = streamingThreshold;
+  }
+
+  /**
+   * Get the image size, in pixels, above which the CLI streams images.
+   * @return Threshold.
+   */
+  public long getStreamingThreshold() {
+    return streamingThreshold;
+  }
+}
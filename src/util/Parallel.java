@@ -0,0 +1,142 @@
+package util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs index-range work (usually image rows) in bands on a fork-join pool.
+ * Every band runs the same code as the sequential path over a disjoint range,
+ * so results do not depend on how the work was split.
+ */
+public class Parallel {
+    /** Work over the index range {@code [start, end)}. */
+    public interface Band {
+        void run(int start, int end);
+    }
+
+    /** pool that bands are run on */
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+    /** forces every call to run on the calling thread if {@code true} */
+    private static volatile boolean sequential = false;
+    /** total work (e.g. pixels) below which a call runs on the calling thread */
+    private static volatile long threshold = 1 << 16;
+    /** set while a thread is inside {@link #runSequential(Runnable)} */
+    private static final ThreadLocal<Boolean> sequentialHere = ThreadLocal.withInitial(() -> false);
+    /** bands per pool thread, so uneven bands still balance */
+    private static final int BANDS_PER_THREAD = 4;
+
+    /**
+     * Splits {@code [0, count)} into bands and runs them on the pool, returning
+     * once all bands have finished. Runs {@code band.run(0, count)} directly if
+     * sequential mode is on or the work is below the threshold.
+     * @param count Number of items (e.g. rows).
+     * @param workPerItem Cost of one item (e.g. pixels per row), used against
+     * the threshold.
+     * @param band Work to run for each band.
+     */
+    public static void forBands(int count, long workPerItem, Band band) {
+        ForkJoinPool current = pool;
+        if (sequential || sequentialHere.get() || count < 2 || current.getParallelism() < 2
+                || count * workPerItem < threshold) {
+            band.run(0, count);
+            return;
+        }
+        int grain = Math.max(1, count / (current.getParallelism() * BANDS_PER_THREAD));
+        current.invoke(new BandAction(band, 0, count, grain));
+    }
+
+    /**
+     * Runs {@code task} on the calling thread with every {@code forBands} call
+     * it makes also kept on that thread, without affecting other threads. For
+     * callers that already keep every core busy with independent work.
+     * @param task Work to run.
+     */
+    public static void runSequential(Runnable task) {
+        if (sequentialHere.get()) {
+            task.run();
+            return;
+        }
+        sequentialHere.set(true);
+        try {
+            task.run();
+        } finally {
+            sequentialHere.set(false);
+        }
+    }
+
+    /**
+     * Sets the pool bands are run on. Defaults to the common pool.
+     * @param pool New pool.
+     */
+    public static void setPool(ForkJoinPool pool) {
+        Parallel.pool = pool;
+    }
+
+    /**
+     * Get the pool bands are run on.
+     * @return Pool.
+     */
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Forces (or stops forcing) all work onto the calling thread.
+     * @param sequential {@code true} to disable parallel bands.
+     */
+    public static void setSequential(boolean sequential) {
+        Parallel.sequential = sequential;
+    }
+
+    /**
+     * Get whether all work is forced onto the calling thread.
+     * @return {@code true} if sequential.
+     */
+    public static boolean isSequential() {
+        return sequential;
+    }
+
+    /**
+     * Sets the amount of work (e.g. pixels) below which a call is not split,
+     * because forking would cost more than it saves.
+     * @param threshold New threshold.
+     */
+    public static void setThreshold(long threshold) {
+        Parallel.threshold = threshold;
+    }
+
+    /**
+     * Get the amount of work below which a call is not split.
+     * @return Threshold.
+     */
+    public static long getThreshold() {
+        return threshold;
+    }
+
+    /** Halves its range until it is at most {@code grain} items long. */
+    private static class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Band band;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        BandAction(Band band, int start, int end, int grain) {
+            this.band = band;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                band.run(start, end);
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new BandAction(band, start, mid, grain), new BandAction(band, mid, end, grain));
+        }
+    }
+}
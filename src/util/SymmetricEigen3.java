@@ -0,0 +1,220 @@
+package util;
+
+/**
+ * Eigen decomposition of a symmetric 3x3 matrix in closed form: eigenvalues
+ * from the trigonometric solution of the characteristic cubic, then
+ * eigenvectors by cross products and a 2x2 solve in the plane orthogonal to
+ * the first (after D. Eberly, "A Robust Eigensolver for 3 x 3 Symmetric
+ * Matrices"), which stays accurate when two eigenvalues (nearly) coincide.
+ * Each eigenvector is signed so that its largest-magnitude component is
+ * positive.
+ */
+public final class SymmetricEigen3 {
+    /** eigenvalues, largest first */
+    private final double[] values = new double[3];
+    /** unit eigenvectors, {@code vectors[i]} belonging to {@code values[i]} */
+    private final double[][] vectors = new double[3][];
+
+    /**
+     * Decomposes {@code a}. Only the upper triangle is read.
+     * @param a Symmetric 3x3 matrix.
+     */
+    public SymmetricEigen3(double[][] a) {
+        double a00 = a[0][0];
+        double a01 = a[0][1];
+        double a02 = a[0][2];
+        double a11 = a[1][1];
+        double a12 = a[1][2];
+        double a22 = a[2][2];
+
+        // scale to [-1, 1] to keep the cubic's terms in range
+        double max = Math.max(Math.max(Math.max(Math.abs(a00), Math.abs(a01)), Math.max(Math.abs(a02),
+                Math.abs(a11))), Math.max(Math.abs(a12), Math.abs(a22)));
+        if (max == 0) {
+            for (int i = 0; i < 3; i++) {
+                vectors[i] = new double[3];
+                vectors[i][i] = 1;
+            }
+            return;
+        }
+        a00 /= max;
+        a01 /= max;
+        a02 /= max;
+        a11 /= max;
+        a12 /= max;
+        a22 /= max;
+
+        double offDiagonal = a01 * a01 + a02 * a02 + a12 * a12;
+        if (offDiagonal == 0) { // already diagonal
+            double[] diagonal = { a00, a11, a22 };
+            Integer[] order = { 0, 1, 2 };
+            java.util.Arrays.sort(order, (i, j) -> Double.compare(diagonal[j], diagonal[i]));
+            for (int i = 0; i < 3; i++) {
+                values[i] = diagonal[order[i]] * max;
+                vectors[i] = new double[3];
+                vectors[i][order[i]] = 1;
+            }
+            return;
+        }
+
+        // eigenvalues of B = (A - qI) / p are 2 cos(phi + 2 pi k / 3)
+        double q = (a00 + a11 + a22) / 3;
+        double b00 = a00 - q;
+        double b11 = a11 - q;
+        double b22 = a22 - q;
+        double p = Math.sqrt((b00 * b00 + b11 * b11 + b22 * b22 + 2 * offDiagonal) / 6);
+        double det = (b00 * (b11 * b22 - a12 * a12) - a01 * (a01 * b22 - a12 * a02)
+                + a02 * (a01 * a12 - b11 * a02)) / (p * p * p);
+        double r = det / 2;
+        double phi = (r <= -1) ? Math.PI / 3 : (r >= 1) ? 0 : Math.acos(r) / 3;
+        double largest = q + 2 * p * Math.cos(phi);
+        double smallest = q + 2 * p * Math.cos(phi + 2 * Math.PI / 3);
+        // the trace fixes the third; clamp so rounding cannot reorder them
+        double middle = Math.max(smallest, Math.min(largest, 3 * q - largest - smallest));
+
+        double[][] m = { { a00, a01, a02 }, { a01, a11, a12 }, { a02, a12, a22 } };
+        // start from whichever outer eigenvalue is better separated
+        boolean largestFirst = largest - middle >= middle - smallest;
+        double first = largestFirst ? largest : smallest;
+        double[] v0 = outerVector(m, first);
+        double[] v1 = middleVector(m, middle, v0);
+        double[] v2 = cross(v0, v1);
+
+        values[0] = largest * max;
+        values[1] = middle * max;
+        values[2] = smallest * max;
+        vectors[0] = largestFirst ? v0 : v2;
+        vectors[1] = v1;
+        vectors[2] = largestFirst ? v2 : v0;
+        for (double[] vector : vectors) {
+            orient(vector);
+        }
+    }
+
+    /**
+     * Get an eigenvalue.
+     * @param i 0 for the largest, 2 for the smallest.
+     * @return Eigenvalue.
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Get a unit eigenvector.
+     * @param i Index of its eigenvalue.
+     * @return Copy of the eigenvector.
+     */
+    public double[] getVector(int i) {
+        return vectors[i].clone();
+    }
+
+    /**
+     * Flips {@code vector} in place so its largest-magnitude component is
+     * positive. Eigenvectors have no sign of their own; fixing one makes
+     * matrices that are close have eigenvectors that are close.
+     */
+    private static void orient(double[] vector) {
+        int largest = 0;
+        for (int i = 1; i < 3; i++) {
+            if (Math.abs(vector[i]) > Math.abs(vector[largest])) {
+                largest = i;
+            }
+        }
+        if (vector[largest] < 0) {
+            for (int i = 0; i < 3; i++) {
+                vector[i] = -vector[i];
+            }
+        }
+    }
+
+    /** Eigenvector of an eigenvalue that is not (nearly) repeated. */
+    private static double[] outerVector(double[][] m, double value) {
+        double[] r0 = { m[0][0] - value, m[0][1], m[0][2] };
+        double[] r1 = { m[1][0], m[1][1] - value, m[1][2] };
+        double[] r2 = { m[2][0], m[2][1], m[2][2] - value };
+        // rows of A - value I span the plane orthogonal to the eigenvector;
+        // the longest cross product of two rows is the most accurate normal
+        double[][] candidates = { cross(r0, r1), cross(r0, r2), cross(r1, r2) };
+        double[] best = candidates[0];
+        for (double[] candidate : candidates) {
+            if (dot(candidate, candidate) > dot(best, best)) {
+                best = candidate;
+            }
+        }
+        return normalize(best);
+    }
+
+    /** Eigenvector of value orthogonal to v0, found within that plane. */
+    private static double[] middleVector(double[][] m, double value, double[] v0) {
+        // orthonormal u, v spanning the plane orthogonal to v0
+        double[] u = (Math.abs(v0[0]) > Math.abs(v0[1])) ? normalize(new double[] { -v0[2], 0, v0[0] })
+                : normalize(new double[] { 0, v0[2], -v0[1] });
+        double[] v = cross(v0, u);
+        // (A - value I) restricted to that plane
+        double[] au = multiply(m, u, value);
+        double[] av = multiply(m, v, value);
+        double m00 = dot(u, au);
+        double m01 = dot(u, av);
+        double m11 = dot(v, av);
+        double absM00 = Math.abs(m00);
+        double absM01 = Math.abs(m01);
+        double absM11 = Math.abs(m11);
+        double s;
+        double t;
+        if (absM00 >= absM11) {
+            if (Math.max(absM00, absM01) == 0) {
+                return u;
+            }
+            if (absM00 >= absM01) {
+                m01 /= m00;
+                m00 = 1 / Math.sqrt(1 + m01 * m01);
+                m01 *= m00;
+            } else {
+                m00 /= m01;
+                m01 = 1 / Math.sqrt(1 + m00 * m00);
+                m00 *= m01;
+            }
+            s = m01;
+            t = -m00;
+        } else {
+            if (Math.max(absM11, absM01) == 0) {
+                return u;
+            }
+            if (absM11 >= absM01) {
+                m01 /= m11;
+                m11 = 1 / Math.sqrt(1 + m01 * m01);
+                m01 *= m11;
+            } else {
+                m11 /= m01;
+                m01 = 1 / Math.sqrt(1 + m11 * m11);
+                m11 *= m01;
+            }
+            s = m11;
+            t = -m01;
+        }
+        return normalize(new double[] { s * u[0] + t * v[0], s * u[1] + t * v[1], s * u[2] + t * v[2] });
+    }
+
+    /** (m - shift I) x */
+    private static double[] multiply(double[][] m, double[] x, double shift) {
+        double[] y = new double[3];
+        for (int i = 0; i < 3; i++) {
+            y[i] = dot(m[i], x) - shift * x[i];
+        }
+        return y;
+    }
+
+    private static double[] cross(double[] a, double[] b) {
+        return new double[] { a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0] };
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    private static double[] normalize(double[] a) {
+        double length = Math.sqrt(dot(a, a));
+        return new double[] { a[0] / length, a[1] / length, a[2] / length };
+    }
+}